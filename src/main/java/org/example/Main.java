@@ -9,6 +9,7 @@ public class Main extends Application {
 
     @Override
     public void start(Stage stage) throws Exception {
+        StartupTimer.mark("start");
         FXMLLoader loader = new FXMLLoader(getClass().getResource("editor.fxml"));
 
         Scene scene = new Scene(loader.load());
@@ -22,10 +23,12 @@ public class Main extends Application {
                 editorController.requestExit();
             });
         }
+        StartupTimer.markFirstPulse(scene);
         stage.show();
     }
 
     public static void main(String[] args) {
+        StartupTimer.mark("main");
         launch();
     }
 }
@@ -0,0 +1,90 @@
+package org.example;
+
+import javafx.application.Platform;
+import javafx.scene.Scene;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Records how long each startup phase took, in milliseconds since the JVM process started, and
+// appends one line per launch to startup.log next to the drafts. With -Dcodepad.trainingRun=true
+// the app quits after the first frame, which is what the appcds Maven profile uses to record the
+// class-data-sharing archive; it also passes -Dcodepad.dataDir so that run keeps its drafts and
+// log under target/ instead of the user's own.
+public final class StartupTimer {
+
+    private static final boolean ENABLED = !"false".equals(System.getProperty("codepad.startupLog"));
+    private static final boolean TRAINING_RUN = Boolean.getBoolean("codepad.trainingRun");
+    private static final String LOG_DIR = "PromoPingCodePad";
+    private static final String LOG_FILE = "startup.log";
+
+    private static final long ORIGIN_NANOS = System.nanoTime();
+    private static final long ORIGIN_MILLIS = sinceProcessStart();
+    private static final Map<String, Long> PHASES = new LinkedHashMap<>();
+
+    private StartupTimer() {
+    }
+
+    public static boolean isTrainingRun() {
+        return TRAINING_RUN;
+    }
+
+    public static synchronized void mark(String phase) {
+        PHASES.putIfAbsent(phase, ORIGIN_MILLIS + (System.nanoTime() - ORIGIN_NANOS) / 1_000_000);
+    }
+
+    public static void markFirstPulse(Scene scene) {
+        Runnable[] listener = new Runnable[1];
+        listener[0] = () -> {
+            scene.removePostLayoutPulseListener(listener[0]);
+            mark("firstPulse");
+            if (TRAINING_RUN) {
+                write();
+                Platform.exit();
+            } else if (ENABLED) {
+                Thread.ofVirtual().name("startup-log").start(StartupTimer::write);
+            }
+        };
+        scene.addPostLayoutPulseListener(listener[0]);
+    }
+
+    private static long sinceProcessStart() {
+        return ProcessHandle.current().info().startInstant()
+                .map(start -> Math.max(0, System.currentTimeMillis() - start.toEpochMilli()))
+                .orElse(0L);
+    }
+
+    private static void write() {
+        StringBuilder line = new StringBuilder(Instant.now().toString());
+        synchronized (StartupTimer.class) {
+            for (Map.Entry<String, Long> phase : PHASES.entrySet()) {
+                line.append(' ').append(phase.getKey()).append('=').append(phase.getValue());
+            }
+        }
+        if (TRAINING_RUN) {
+            line.append(" training");
+        }
+        line.append(System.lineSeparator());
+        String base = System.getProperty("codepad.dataDir");
+        if (base == null || base.isBlank()) {
+            base = System.getenv("LOCALAPPDATA");
+        }
+        if (base == null || base.isBlank()) {
+            base = System.getProperty("user.home");
+        }
+        Path file = Paths.get(base, LOG_DIR, LOG_FILE);
+        try {
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, line, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.example.controllers;
 
 import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
 import javafx.fxml.FXML;
@@ -14,7 +15,9 @@ import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
 import javafx.scene.layout.VBox;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
@@ -22,13 +25,38 @@ import javafx.geometry.Point2D;
 import org.fxmisc.flowless.VirtualizedScrollPane;
 import org.fxmisc.richtext.CodeArea;
 import org.fxmisc.richtext.LineNumberFactory;
-import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.Paragraph;
+import org.fxmisc.richtext.model.PlainTextChange;
 import org.fxmisc.richtext.model.StyleSpansBuilder;
-import org.reactfx.Subscription;
+import org.example.StartupTimer;
+import org.example.editor.DocumentStats;
+import org.example.editor.FileSearch;
+import org.example.editor.FindIndex;
+import org.example.editor.FindQuery;
+import org.example.editor.FuzzyMatcher;
+import org.example.editor.HibernatedEditor;
+import org.example.editor.IdentifierIndex;
+import org.example.editor.IncrementalHighlighter;
+import org.example.editor.InterruptibleCharSequence;
+import org.example.editor.LargeDocument;
+import org.example.editor.LargeFileViewer;
+import org.example.editor.Lexer;
+import org.example.editor.LineEndingMap;
+import org.example.editor.RegexLexer;
+import org.example.editor.SymbolDictionary;
+import org.example.editor.TabHibernator;
+import org.example.editor.TableLexer;
+import org.example.editor.TrigramIndex;
+import org.example.io.CharsetDetector;
+import org.example.io.DraftJournal;
+import org.example.io.DraftWriter;
+import org.example.io.TextFileReader;
+import org.example.io.TextFileWriter;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
@@ -36,6 +64,7 @@ import java.net.http.HttpResponse;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
@@ -43,15 +72,19 @@ import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.Set;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public class EditorController {
 
@@ -64,7 +97,22 @@ public class EditorController {
     private static final String DRAFTS_DIR = "PromoPingCodePad";
     private static final String LEGACY_DRAFTS_DIR = "CodePad";
     private static final String DRAFTS_FILE = "drafts.dat";
+    private static final String JOURNAL_DIR = "drafts";
+    private static final String INDEX_DIR = "index";
     private static final int AUTO_SAVE_SECONDS = 30;
+    private static final int ASYNC_HIGHLIGHT_CHARS = 256 * 1024;
+    private static final int VIEWPORT_FIRST_CHARS = 1024 * 1024;
+    private static final long LARGE_FILE_BYTES = Long.getLong("codepad.largeFileBytes", 64L * 1024 * 1024);
+    private static final long VIEWER_FILE_BYTES = Long.getLong("codepad.viewerFileBytes", 1024L * 1024 * 1024);
+    private static final int MAX_LIVE_EDITORS = Integer.getInteger("codepad.maxLiveEditors", 8);
+    private static final long LIVE_EDITOR_BYTES = Long.getLong("codepad.liveEditorBytes", 256L * 1024 * 1024);
+    private static final ExecutorService OPEN_EXECUTOR = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("file-open-", 0).factory());
+    private static final int MAX_SUGGESTIONS = 80;
+    private static final double KEYWORD_BONUS = 4.0;
+    private static final int SYMBOL_INDEX_SECONDS = 2;
+    private static final int SYMBOL_INDEX_MAX_CHARS = 4 * 1024 * 1024;
+    private static final boolean FOLDER_SYMBOLS = !"false".equals(System.getProperty("codepad.folderSymbols"));
     private static final double BASE_FONT_SIZE = 13.0;
     private static final double MIN_FONT_SIZE = 10.0;
     private static final double MAX_FONT_SIZE = 24.0;
@@ -73,11 +121,13 @@ public class EditorController {
     private static final byte[] BOM_UTF16_BE = new byte[]{(byte) 0xFE, (byte) 0xFF};
 
     private enum FileEncoding {
-        ANSI("ANSI", java.nio.charset.Charset.defaultCharset(), null),
+        ANSI("ANSI", ansiCharset(), null),
         UTF8("UTF-8", java.nio.charset.StandardCharsets.UTF_8, null),
         UTF8_BOM("UTF-8 BOM", java.nio.charset.StandardCharsets.UTF_8, BOM_UTF8),
         UTF16_LE_BOM("UTF-16 LE BOM", java.nio.charset.StandardCharsets.UTF_16LE, BOM_UTF16_LE),
-        UTF16_BE_BOM("UTF-16 BE BOM", java.nio.charset.StandardCharsets.UTF_16BE, BOM_UTF16_BE);
+        UTF16_BE_BOM("UTF-16 BE BOM", java.nio.charset.StandardCharsets.UTF_16BE, BOM_UTF16_BE),
+        UTF16_LE("UTF-16 LE", java.nio.charset.StandardCharsets.UTF_16LE, null),
+        UTF16_BE("UTF-16 BE", java.nio.charset.StandardCharsets.UTF_16BE, null);
 
         final String label;
         final java.nio.charset.Charset charset;
@@ -91,16 +141,27 @@ public class EditorController {
     }
 
     private enum LineEnding {
-        CRLF("Windows (CRLF)", "\r\n"),
-        LF("Unix (LF)", "\n"),
-        CR("Mac (CR)", "\r");
+        CRLF("Windows (CRLF)", "\r\n", LineEndingMap.CRLF),
+        LF("Unix (LF)", "\n", LineEndingMap.LF),
+        CR("Mac (CR)", "\r", LineEndingMap.CR);
 
         final String label;
         final String sequence;
+        final int kind;
 
-        LineEnding(String label, String sequence) {
+        LineEnding(String label, String sequence, int kind) {
             this.label = label;
             this.sequence = sequence;
+            this.kind = kind;
+        }
+
+        static LineEnding of(int kind) {
+            for (LineEnding lineEnding : values()) {
+                if (lineEnding.kind == kind) {
+                    return lineEnding;
+                }
+            }
+            return CRLF;
         }
     }
     private static final String[] KEYWORDS = new String[]{
@@ -126,15 +187,20 @@ public class EditorController {
             "try", "while", "with", "yield"
     };
 
-    private static final Pattern PATTERN_JAVA = buildPattern(KEYWORDS,
+    private static final Lexer REGEX_LEXER_JAVA = new RegexLexer(buildPattern(KEYWORDS,
             "//[^\\n]*|/\\*(.|\\R)*?\\*/",
-            "\"([^\"\\\\]|\\\\.)*\"|'([^'\\\\]|\\\\.)*'");
-    private static final Pattern PATTERN_JS = buildPattern(KEYWORDS_JS,
+            "\"([^\"\\\\]|\\\\.)*\"|'([^'\\\\]|\\\\.)*'"), true, false);
+    private static final Lexer REGEX_LEXER_JS = new RegexLexer(buildPattern(KEYWORDS_JS,
             "//[^\\n]*|/\\*(.|\\R)*?\\*/",
-            "\"([^\"\\\\]|\\\\.)*\"|'([^'\\\\]|\\\\.)*'|`([^`\\\\]|\\\\.)*`");
-    private static final Pattern PATTERN_PY = buildPattern(KEYWORDS_PY,
+            "\"([^\"\\\\]|\\\\.)*\"|'([^'\\\\]|\\\\.)*'|`([^`\\\\]|\\\\.)*`"), true, true);
+    private static final Lexer REGEX_LEXER_PY = new RegexLexer(buildPattern(KEYWORDS_PY,
             "#[^\\n]*",
-            "\"([^\"\\\\]|\\\\.)*\"|'([^'\\\\]|\\\\.)*'");
+            "\"([^\"\\\\]|\\\\.)*\"|'([^'\\\\]|\\\\.)*'"), false, false);
+
+    private static final boolean USE_REGEX_LEXERS = "regex".equalsIgnoreCase(System.getProperty("codepad.lexer"));
+    private static final Lexer LEXER_JAVA = USE_REGEX_LEXERS ? REGEX_LEXER_JAVA : TableLexer.java(KEYWORDS);
+    private static final Lexer LEXER_JS = USE_REGEX_LEXERS ? REGEX_LEXER_JS : TableLexer.javaScript(KEYWORDS_JS);
+    private static final Lexer LEXER_PY = USE_REGEX_LEXERS ? REGEX_LEXER_PY : TableLexer.python(KEYWORDS_PY);
 
     private static final String CURSOR = "${cursor}";
     private static final Map<String, String> SNIPPETS = new LinkedHashMap<>();
@@ -163,13 +229,21 @@ public class EditorController {
     @FXML
     private Label lblEncoding;
     @FXML
+    private Label lblEncodingConfidence;
+    @FXML
     private Label lblZoom;
+    @FXML
+    private Label lblEditors;
+    @FXML
+    private Button btnCancelOpen;
 
     @FXML
     private MenuItem miNewTab;
     @FXML
     private MenuItem miOpen;
     @FXML
+    private MenuItem miOpenViewer;
+    @FXML
     private MenuItem miSave;
     @FXML
     private MenuItem miSaveAs;
@@ -194,6 +268,8 @@ public class EditorController {
     private MenuItem miFind;
     @FXML
     private MenuItem miReplace;
+    @FXML
+    private MenuItem miFindInFiles;
 
     @FXML
     private RadioMenuItem miThemeLight;
@@ -214,6 +290,10 @@ public class EditorController {
     @FXML
     private RadioMenuItem miEncodingUtf16BeBom;
     @FXML
+    private RadioMenuItem miEncodingUtf16Le;
+    @FXML
+    private RadioMenuItem miEncodingUtf16Be;
+    @FXML
     private MenuItem miConvertAnsi;
     @FXML
     private MenuItem miConvertUtf8;
@@ -224,12 +304,18 @@ public class EditorController {
     @FXML
     private MenuItem miConvertUtf16BeBom;
     @FXML
+    private MenuItem miConvertUtf16Le;
+    @FXML
+    private MenuItem miConvertUtf16Be;
+    @FXML
     private RadioMenuItem miEolWindows;
     @FXML
     private RadioMenuItem miEolUnix;
     @FXML
     private RadioMenuItem miEolMac;
     @FXML
+    private RadioMenuItem miEolPreserve;
+    @FXML
     private MenuItem miZoomIn;
     @FXML
     private MenuItem miZoomOut;
@@ -245,35 +331,86 @@ public class EditorController {
     private TextField tfFind;
     private TextField tfReplace;
     private Label lblFindStatus;
+    private CheckBox cbFindCase;
+    private CheckBox cbFindWord;
+    private CheckBox cbFindRegex;
+    private Stage filesStage;
+    private TextField tfFilesQuery;
+    private TextField tfFilesFolder;
+    private TextField tfFilesFilter;
+    private Label lblFilesStatus;
+    private CheckBox cbFilesCase;
+    private CheckBox cbFilesWord;
+    private CheckBox cbFilesRegex;
+    private CheckBox cbFilesIndex;
+    private Label lblFilesIndex;
+    private TrigramIndex workspaceIndex;
+    private ListView<FileSearch.Hit> lvFilesResults;
+    private FileSearch fileSearch;
     private ContextMenu suggestMenu;
     private String appVersion = "0.0.0";
     private boolean draftsDirty = false;
+    private List<DraftJournal> draftJournals = new ArrayList<>();
+    private final DraftWriter draftWriter = new DraftWriter();
+    private final TabHibernator<Tab> hibernator = new TabHibernator<>(MAX_LIVE_EDITORS, LIVE_EDITOR_BYTES);
     private Timeline autosaveTimeline;
+    private final SymbolDictionary symbols = new SymbolDictionary(FOLDER_SYMBOLS);
+    private Timeline symbolTimeline;
     private FileEncoding defaultEncoding = FileEncoding.UTF8;
     private LineEnding defaultLineEnding = LineEnding.CRLF;
     private double fontSize = BASE_FONT_SIZE;
+    private final List<PendingOpen> pendingOpens = new ArrayList<>();
+    private Timeline openProgressTimeline;
 
     private static class TabData {
         CodeArea area;
         Path filePath;
         boolean dirty;
         boolean loading;
-        Subscription highlightSubscription;
+        IncrementalHighlighter highlighter;
+        DocumentStats stats;
+        IdentifierIndex identifiers;
+        FindIndex find;
+        boolean findNextPending;
+        boolean symbolsDirty;
+        LargeDocument large;
+        Label largeRange;
+        LargeFileViewer viewer;
         boolean codeMode;
         String language;
-        Pattern pattern;
+        Lexer lexer;
         FileEncoding encoding;
+        int encodingConfidence = -1;
         LineEnding lineEnding;
+        LineEndingMap eols;
+        boolean preserveEol;
+        DraftJournal journal;
+        // A restored draft that could not be read: its files stay listed until the tab is closed.
+        DraftJournal brokenJournal;
+        boolean placeholder;
+        HibernatedEditor hibernated;
     }
 
-    private static class DraftEntry {
-        String title;
-        String filePath;
-        boolean codeMode;
-        String language;
+    private static class PendingOpen {
+        final Path path;
+        final long size;
+        volatile long done;
+        volatile boolean cancelled;
+        FileSearch.Hit reveal;
+
+        PendingOpen(Path path, long size) {
+            this.path = path;
+            this.size = size;
+        }
+    }
+
+    private static class LoadedFile {
+        FileEncoding encoding;
+        int encodingConfidence;
+        LineEnding lineEnding;
+        LineEndingMap eols;
         String content;
-        String encoding;
-        String lineEnding;
+        LargeDocument large;
     }
 
     @FXML
@@ -294,20 +431,30 @@ public class EditorController {
         miEncodingUtf8Bom.setToggleGroup(encodingGroup);
         miEncodingUtf16LeBom.setToggleGroup(encodingGroup);
         miEncodingUtf16BeBom.setToggleGroup(encodingGroup);
+        miEncodingUtf16Le.setToggleGroup(encodingGroup);
+        miEncodingUtf16Be.setToggleGroup(encodingGroup);
         miEncodingUtf8.setSelected(true);
 
         ToggleGroup eolGroup = new ToggleGroup();
         miEolWindows.setToggleGroup(eolGroup);
         miEolUnix.setToggleGroup(eolGroup);
         miEolMac.setToggleGroup(eolGroup);
+        miEolPreserve.setToggleGroup(eolGroup);
         miEolWindows.setSelected(true);
 
         setupShortcuts();
         appVersion = loadAppVersion();
+        // initialize() runs inside FXMLLoader.load(), so the FXML phase ends here, not in Main.
+        StartupTimer.mark("fxml");
         if (!loadDrafts()) {
             createNewTab();
         }
+        StartupTimer.mark("drafts");
         tabPane.getSelectionModel().selectedItemProperty().addListener((obs, oldTab, newTab) -> {
+            clearFind(oldTab);
+            materialize(newTab);
+            refreshFind();
+            trackEditor(newTab);
             updateStatus("Pronto");
             syncModeToggle(newTab);
             syncEncodingToggle(newTab);
@@ -319,8 +466,18 @@ public class EditorController {
             updateLineEndingStatus();
             updateZoomStatus();
         });
+        tabPane.getTabs().addListener((ListChangeListener<Tab>) change -> {
+            while (change.next()) {
+                for (Tab removed : change.getRemoved()) {
+                    symbols.remove(removed);
+                }
+            }
+        });
         startAutoSave();
-        checkForUpdatesAsync();
+        startSymbolIndexing();
+        if (!StartupTimer.isTrainingRun()) {
+            checkForUpdatesAsync();
+        }
     }
 
     private void setupShortcuts() {
@@ -337,6 +494,9 @@ public class EditorController {
                 javafx.scene.input.KeyCode.F, javafx.scene.input.KeyCombination.CONTROL_DOWN));
         miReplace.setAccelerator(new javafx.scene.input.KeyCodeCombination(
                 javafx.scene.input.KeyCode.H, javafx.scene.input.KeyCombination.CONTROL_DOWN));
+        miFindInFiles.setAccelerator(new javafx.scene.input.KeyCodeCombination(
+                javafx.scene.input.KeyCode.F, javafx.scene.input.KeyCombination.CONTROL_DOWN,
+                javafx.scene.input.KeyCombination.SHIFT_DOWN));
         miZoomIn.setAccelerator(new javafx.scene.input.KeyCodeCombination(
                 javafx.scene.input.KeyCode.EQUALS, javafx.scene.input.KeyCombination.CONTROL_DOWN));
         miZoomOut.setAccelerator(new javafx.scene.input.KeyCodeCombination(
@@ -378,15 +538,39 @@ public class EditorController {
         data.dirty = false;
         data.codeMode = true;
         data.language = "java";
-        data.pattern = PATTERN_JAVA;
+        data.lexer = LEXER_JAVA;
+        data.highlighter = new IncrementalHighlighter(area);
+        data.stats = new DocumentStats(area);
+        data.identifiers = new IdentifierIndex(area);
+        data.find = new FindIndex(area);
+        data.find.setListener(() -> onFindUpdated(data));
+        data.symbolsDirty = true;
         data.encoding = defaultEncoding;
         data.lineEnding = defaultLineEnding;
+        data.eols = LineEndingMap.uniform(data.lineEnding.kind, area.getParagraphs().size() - 1);
 
         applyFontSize(area);
         attachHighlight(data);
 
-        area.plainTextChanges().subscribe(ignore -> {
+        area.multiPlainChanges().subscribe(changes -> {
+            data.stats.update(changes);
+            data.identifiers.update(changes);
+            data.symbolsDirty = true;
+            if (data.journal != null) {
+                for (PlainTextChange change : changes) {
+                    data.journal.record(change.getPosition(), change.getRemoved().length(), change.getInserted());
+                }
+            }
+            if (data.large == null) {
+                data.eols.update(changes, area, data.lineEnding.kind);
+                if (data.preserveEol) {
+                    updateLineEndingStatus();
+                }
+            }
             if (!data.loading) {
+                if (data.large != null) {
+                    data.large.markWindowDirty();
+                }
                 markDirty(tab, true);
                 draftsDirty = true;
             }
@@ -394,7 +578,12 @@ public class EditorController {
         });
 
         area.caretPositionProperty().addListener((obs, oldPos, newPos) -> updateCaretStatus(area));
-        area.selectedTextProperty().addListener((obs, oldText, newText) -> updateSelectionStatus(area));
+        area.selectionProperty().addListener((obs, oldSel, newSel) -> {
+            updateSelectionStatus(data);
+            if (data.find.isActive()) {
+                updateFindStatus(data);
+            }
+        });
 
         setupEditorInteractions(data);
         VirtualizedScrollPane<CodeArea> scroller = new VirtualizedScrollPane<>(area);
@@ -404,44 +593,24 @@ public class EditorController {
                 event.consume();
             }
         });
-        tab.setOnClosed(event -> saveDrafts());
+        tab.setOnClosed(event -> {
+            releaseTab(data);
+            hibernator.remove(tab);
+            updateEditorsStatus();
+            saveDrafts();
+        });
 
         applyHighlight(data);
         return data;
     }
 
     private void applyHighlight(TabData data) {
-        if (data == null || data.pattern == null) {
+        if (data == null || data.lexer == null) {
             return;
         }
-        StyleSpans<Collection<String>> spans = computeHighlighting(data.area.getText(), data.pattern);
-        data.area.setStyleSpans(0, spans);
-    }
-
-    private StyleSpans<Collection<String>> computeHighlighting(String text, Pattern pattern) {
-        Matcher matcher = pattern.matcher(text);
-        int lastKwEnd = 0;
-        StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>();
-        while (matcher.find()) {
-            String styleClass =
-                    matcher.group("KEYWORD") != null ? "keyword" :
-                            matcher.group("TYPE") != null ? "type" :
-                                    matcher.group("FUNCTION") != null ? "function" :
-                                            matcher.group("IDENT") != null ? "identifier" :
-                            matcher.group("PAREN") != null ? "paren" :
-                                    matcher.group("BRACE") != null ? "brace" :
-                                            matcher.group("BRACKET") != null ? "bracket" :
-                                                    matcher.group("SEMICOLON") != null ? "semicolon" :
-                                                            matcher.group("STRING") != null ? "string" :
-                                                                    matcher.group("COMMENT") != null ? "comment" :
-                                                                            matcher.group("NUMBER") != null ? "number" :
-                                                                                    null;
-            spansBuilder.add(Collections.emptyList(), matcher.start() - lastKwEnd);
-            spansBuilder.add(Collections.singleton(styleClass), matcher.end() - matcher.start());
-            lastKwEnd = matcher.end();
-        }
-        spansBuilder.add(Collections.emptyList(), text.length() - lastKwEnd);
-        return spansBuilder.create();
+        data.highlighter.setAsync(data.area.getLength() >= ASYNC_HIGHLIGHT_CHARS);
+        data.highlighter.setViewportFirst(data.area.getLength() >= VIEWPORT_FIRST_CHARS);
+        data.highlighter.rehighlight(data.lexer);
     }
 
     private CodeArea getCurrentArea() {
@@ -470,6 +639,10 @@ public class EditorController {
         if (data == null) {
             return;
         }
+        if (data.viewer != null) {
+            updateViewerLineStatus(data);
+            return;
+        }
         updateLineColStatus(data.area);
     }
 
@@ -477,7 +650,11 @@ public class EditorController {
         if (lblLineCol == null || area == null) {
             return;
         }
-        int line = area.getCurrentParagraph() + 1;
+        TabData data = getCurrentData();
+        long line = area.getCurrentParagraph() + 1;
+        if (data != null && data.area == area && data.large != null) {
+            line += data.large.windowStart();
+        }
         int col = area.getCaretColumn() + 1;
         int pos = area.getCaretPosition() + 1;
         lblLineCol.setText("Ln " + line + ", Col " + col + ", Pos " + pos);
@@ -497,16 +674,24 @@ public class EditorController {
             }
             return;
         }
-        updateSelectionStatus(data.area);
+        updateSelectionStatus(data);
     }
 
-    private void updateSelectionStatus(CodeArea area) {
-        if (lblSelection == null || area == null) {
+    private void updateSelectionStatus(TabData data) {
+        if (lblSelection == null || data == null || data != getCurrentData()) {
             return;
         }
-        String selected = area.getSelectedText();
-        int len = selected == null ? 0 : selected.length();
-        lblSelection.setText("Seleção: " + len);
+        if (data.viewer != null) {
+            lblSelection.setText("Seleção: " + data.viewer.view().getSelectionModel().getSelectedIndices().size() + " linhas");
+            return;
+        }
+        DocumentStats.Counts selection = data.stats.selection();
+        if (selection.characters() == 0) {
+            lblSelection.setText("Seleção: 0");
+            return;
+        }
+        lblSelection.setText("Seleção: " + selection.characters() + " (" + selection.words() + " palavras, "
+                + selection.lines() + " linhas)");
     }
 
     private void updateEncodingStatus() {
@@ -516,6 +701,10 @@ public class EditorController {
         TabData data = getCurrentData();
         FileEncoding encoding = data == null || data.encoding == null ? defaultEncoding : data.encoding;
         lblEncoding.setText(encoding.label);
+        if (lblEncodingConfidence != null) {
+            boolean detected = data != null && data.encodingConfidence >= 0;
+            lblEncodingConfidence.setText(detected ? "(detectado " + data.encodingConfidence + "%)" : "");
+        }
     }
 
     private void updateLineEndingStatus() {
@@ -523,6 +712,17 @@ public class EditorController {
             return;
         }
         TabData data = getCurrentData();
+        if (data != null && data.preserveEol && data.eols != null && data.eols.isMixed()) {
+            StringBuilder sb = new StringBuilder("Misto (");
+            for (LineEnding kind : LineEnding.values()) {
+                int count = data.eols.count(kind.kind);
+                if (count > 0) {
+                    sb.append(sb.length() > 7 ? ", " : "").append(kind.name()).append(' ').append(count);
+                }
+            }
+            lblEol.setText(sb.append(')').toString());
+            return;
+        }
         LineEnding lineEnding = data == null || data.lineEnding == null ? defaultLineEnding : data.lineEnding;
         lblEol.setText(lineEnding.label);
     }
@@ -544,11 +744,21 @@ public class EditorController {
             lblStats.setText("Linhas: 1 | Palavras: 0 | Caracteres: 0");
             return;
         }
-        String text = data.area.getText();
-        int chars = text.length();
-        int words = text.trim().isEmpty() ? 0 : text.trim().split("\\s+").length;
-        int lines = text.isEmpty() ? 1 : text.split("\\R", -1).length;
-        lblStats.setText("Linhas: " + lines + " | Palavras: " + words + " | Caracteres: " + chars);
+        if (data.viewer != null) {
+            LargeFileViewer viewer = data.viewer;
+            String state = viewer.error() != null ? " (erro ao indexar)"
+                    : viewer.isIndexed() ? "" : " (indexando " + Math.round(viewer.progress() * 100) + "%)";
+            lblStats.setText("Linhas: " + viewer.lineCount() + state + " | Bytes: " + viewer.size() + " | Somente leitura");
+            return;
+        }
+        DocumentStats stats = data.stats;
+        if (data.large != null) {
+            long first = data.large.windowStart() + 1;
+            lblStats.setText("Linhas: " + data.large.lineCount() + " | Janela: " + first + "-"
+                    + (first + stats.lines() - 1) + " | Palavras: " + stats.words() + " | Caracteres: " + stats.characters());
+            return;
+        }
+        lblStats.setText("Linhas: " + stats.lines() + " | Palavras: " + stats.words() + " | Caracteres: " + stats.characters());
     }
 
     private void syncModeToggle(Tab tab) {
@@ -581,6 +791,8 @@ public class EditorController {
             case UTF8_BOM -> miEncodingUtf8Bom.setSelected(true);
             case UTF16_LE_BOM -> miEncodingUtf16LeBom.setSelected(true);
             case UTF16_BE_BOM -> miEncodingUtf16BeBom.setSelected(true);
+            case UTF16_LE -> miEncodingUtf16Le.setSelected(true);
+            case UTF16_BE -> miEncodingUtf16Be.setSelected(true);
         }
     }
 
@@ -592,6 +804,10 @@ public class EditorController {
         if (data == null) {
             return;
         }
+        if (data.preserveEol) {
+            miEolPreserve.setSelected(true);
+            return;
+        }
         LineEnding lineEnding = data.lineEnding == null ? defaultLineEnding : data.lineEnding;
         switch (lineEnding) {
             case CRLF -> miEolWindows.setSelected(true);
@@ -601,18 +817,25 @@ public class EditorController {
     }
 
     private void attachHighlight(TabData data) {
-        if (data.highlightSubscription != null) {
-            data.highlightSubscription.unsubscribe();
-        }
-        data.highlightSubscription = data.area.multiPlainChanges()
-                .successionEnds(Duration.ofMillis(200))
-                .subscribe(ignore -> applyHighlight(data));
+        data.highlighter.attach();
     }
 
     private void detachHighlight(TabData data) {
-        if (data.highlightSubscription != null) {
-            data.highlightSubscription.unsubscribe();
-            data.highlightSubscription = null;
+        data.highlighter.detach();
+    }
+
+    private void releaseTab(TabData data) {
+        if (data.viewer != null) {
+            data.viewer.close();
+            return;
+        }
+        detachHighlight(data);
+        data.find.clear();
+        if (data.large != null) {
+            try {
+                data.large.close();
+            } catch (IOException ignored) {
+            }
         }
     }
 
@@ -623,6 +846,9 @@ public class EditorController {
     }
 
     private void setMode(TabData data, boolean codeMode) {
+        if (data.viewer != null) {
+            return;
+        }
         data.codeMode = codeMode;
         data.area.getStyleClass().removeAll("code-area", "text-area");
         data.area.getStyleClass().add(codeMode ? "code-area" : "text-area");
@@ -635,7 +861,7 @@ public class EditorController {
         }
     }
 
-    private void applyFontSize(CodeArea area) {
+    private void applyFontSize(Region area) {
         if (area == null) {
             return;
         }
@@ -646,7 +872,7 @@ public class EditorController {
         for (Tab tab : tabPane.getTabs()) {
             TabData data = (TabData) tab.getUserData();
             if (data != null) {
-                applyFontSize(data.area);
+                applyFontSize(data.viewer != null ? data.viewer.view() : data.area);
             }
         }
     }
@@ -763,35 +989,43 @@ public class EditorController {
         }, () -> suggestMenu.show(data.area, 0, 0));
     }
 
-    private Set<String> buildSuggestions(TabData data, String prefix) {
-        Set<String> result = new LinkedHashSet<>();
+    // Keywords, snippets, this tab's identifiers and the shared dictionary are ranked together by
+    // fuzzy match score; a word offered by several of them keeps its best score.
+    private List<String> buildSuggestions(TabData data, String prefix) {
         String norm = prefix == null ? "" : prefix.trim();
+        FuzzyMatcher matcher = new FuzzyMatcher(norm);
+        Map<String, Double> best = new HashMap<>();
         if (data.codeMode) {
             for (String key : getKeywordsForLanguage(data.language)) {
-                if (norm.isEmpty() || key.startsWith(norm)) {
-                    result.add(key);
-                }
+                addSuggestion(best, matcher, key);
             }
         }
         for (String key : SNIPPETS.keySet()) {
-            if (norm.isEmpty() || key.startsWith(norm)) {
-                result.add(key);
-            }
+            addSuggestion(best, matcher, key);
         }
-        String text = data.area.getText();
-        Matcher matcher = Pattern.compile("\\b[a-zA-Z_][\\w]*\\b").matcher(text);
-        while (matcher.find()) {
-            String word = matcher.group();
-            if (norm.isEmpty() || word.startsWith(norm)) {
-                result.add(word);
-            }
-            if (result.size() > 80) {
-                break;
-            }
+        for (FuzzyMatcher.Match match : data.identifiers.complete(matcher, data.area.getCurrentParagraph(), MAX_SUGGESTIONS)) {
+            best.merge(match.text(), match.score(), Math::max);
+        }
+        for (FuzzyMatcher.Match match : symbols.complete(matcher, MAX_SUGGESTIONS)) {
+            best.merge(match.text(), match.score(), Math::max);
+        }
+        List<FuzzyMatcher.Match> ranked = new ArrayList<>(best.size());
+        best.forEach((text, score) -> ranked.add(new FuzzyMatcher.Match(text, score)));
+        ranked.sort(FuzzyMatcher.BY_SCORE);
+        List<String> result = new ArrayList<>(Math.min(MAX_SUGGESTIONS, ranked.size()));
+        for (int i = 0; i < ranked.size() && result.size() < MAX_SUGGESTIONS; i++) {
+            result.add(ranked.get(i).text());
         }
         return result;
     }
 
+    private void addSuggestion(Map<String, Double> best, FuzzyMatcher matcher, String key) {
+        int score = matcher.score(key);
+        if (score != FuzzyMatcher.NO_MATCH) {
+            best.merge(key, score + KEYWORD_BONUS, Math::max);
+        }
+    }
+
     private String getCurrentWord(CodeArea area) {
         int[] range = getCurrentWordRange(area);
         if (range == null) {
@@ -800,14 +1034,13 @@ public class EditorController {
         return area.getText(range[0], range[1]);
     }
 
+    // Words never span lines, so only the caret's paragraph is read.
     private int[] getCurrentWordRange(CodeArea area) {
         int caret = area.getCaretPosition();
-        String text = area.getText();
-        if (text.isEmpty() || caret < 0) {
-            return null;
-        }
-        int start = caret;
-        int end = caret;
+        int column = area.getCaretColumn();
+        String text = area.getParagraph(area.getCurrentParagraph()).getText();
+        int start = column;
+        int end = column;
         while (start > 0 && Character.isJavaIdentifierPart(text.charAt(start - 1))) {
             start--;
         }
@@ -817,7 +1050,7 @@ public class EditorController {
         if (start == end) {
             return null;
         }
-        return new int[]{start, end};
+        return new int[]{caret - column + start, caret - column + end};
     }
 
     private void replaceCurrentWord(CodeArea area, String replacement) {
@@ -866,6 +1099,7 @@ public class EditorController {
 
     private void setCurrentFile(TabData data, Tab tab, Path path) {
         data.filePath = path;
+        data.symbolsDirty = true;
         String name = path == null ? "Sem Titulo" : path.getFileName().toString();
         tab.setText(name + (data.dirty ? "*" : ""));
     }
@@ -879,47 +1113,399 @@ public class EditorController {
     public void handleOpen() {
         FileChooser chooser = new FileChooser();
         chooser.setTitle("Abrir arquivo");
+        List<File> files = chooser.showOpenMultipleDialog(root.getScene().getWindow());
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            openFile(file);
+        }
+    }
+
+    // Only flags the opens: every task still runs to finishOpen, which takes it off the list, even
+    // one that had not started yet (cancelling its future would skip that and leave it listed).
+    @FXML
+    public void handleCancelOpen() {
+        for (PendingOpen pending : pendingOpens) {
+            pending.cancelled = true;
+        }
+    }
+
+    private void openFile(File file) {
+        openFile(file, null);
+    }
+
+    // `reveal` is a find-in-files hit to select once the tab is showing.
+    private void openFile(File file, FileSearch.Hit reveal) {
+        Path path = file.toPath();
+        try {
+            long size = Files.size(path);
+            if (size >= VIEWER_FILE_BYTES) {
+                openViewer(file);
+                revealHit(getCurrentData(), reveal);
+                return;
+            }
+            PendingOpen pending = new PendingOpen(path, size);
+            pending.reveal = reveal;
+            FileEncoding fallback = defaultEncoding;
+            pendingOpens.add(pending);
+            updateOpenProgress();
+            OPEN_EXECUTOR.execute(() -> {
+                LoadedFile loaded = null;
+                Exception failure = null;
+                try {
+                    if (!pending.cancelled) {
+                        loaded = loadFile(pending, fallback);
+                    }
+                } catch (IOException | RuntimeException ex) {
+                    failure = ex;
+                }
+                LoadedFile result = loaded;
+                Exception error = failure;
+                Platform.runLater(() -> finishOpen(pending, result, error));
+            });
+        } catch (IOException ex) {
+            showError("Não foi possível abrir o arquivo.", ex.getMessage());
+        }
+    }
+
+    // Runs on the open executor: everything proportional to the file size happens here, the FX
+    // thread only builds the tab from the decoded text (or the indexed piece table).
+    private LoadedFile loadFile(PendingOpen pending, FileEncoding fallback) throws IOException {
+        byte[] probe;
+        try (InputStream in = Files.newInputStream(pending.path)) {
+            probe = in.readNBytes(CharsetDetector.SAMPLE_BYTES);
+        }
+        CharsetDetector.Detection detection = CharsetDetector.detect(probe, probe.length, probe.length < pending.size);
+        LoadedFile loaded = new LoadedFile();
+        loaded.encoding = encodingFor(detection, fallback);
+        loaded.encodingConfidence = detection.confidence();
+        Charset charset = loaded.encoding.charset;
+        int offset = loaded.encoding.bom != null ? loaded.encoding.bom.length : 0;
+        if (pending.size >= LARGE_FILE_BYTES) {
+            loaded.large = LargeDocument.open(pending.path, charset, offset,
+                    () -> pending.cancelled, done -> pending.done = done);
+            loaded.lineEnding = detectLineEnding(new String(probe, offset, probe.length - offset, charset));
+        } else {
+            loaded.content = TextFileReader.read(pending.path, charset, offset,
+                    () -> pending.cancelled, done -> pending.done = done);
+            loaded.eols = LineEndingMap.scan(loaded.content, defaultLineEnding.kind);
+            loaded.lineEnding = LineEnding.of(loaded.eols.dominant());
+        }
+        return loaded;
+    }
+
+    private void finishOpen(PendingOpen pending, LoadedFile loaded, Exception error) {
+        pendingOpens.remove(pending);
+        updateOpenProgress();
+        String name = pending.path.getFileName().toString();
+        if (pending.cancelled) {
+            if (loaded != null && loaded.large != null) {
+                try {
+                    loaded.large.close();
+                } catch (IOException ignored) {
+                }
+            }
+            updateStatus("Abertura cancelada: " + name);
+            return;
+        }
+        if (error != null) {
+            showError("Não foi possível abrir o arquivo.", error.getMessage());
+            return;
+        }
+        try {
+            if (loaded.large != null && loaded.large.hasOverlongLines()) {
+                loaded.large.close();
+                openViewer(pending.path.toFile());
+            } else if (loaded.large != null) {
+                showLargeFile(pending.path, loaded);
+            } else {
+                showOpenedFile(pending.path, loaded);
+            }
+            revealHit(getCurrentData(), pending.reveal);
+        } catch (IOException ex) {
+            showError("Não foi possível abrir o arquivo.", ex.getMessage());
+        }
+    }
+
+    private void updateOpenProgress() {
+        boolean busy = !pendingOpens.isEmpty();
+        if (btnCancelOpen != null) {
+            btnCancelOpen.setVisible(busy);
+            btnCancelOpen.setManaged(busy);
+        }
+        if (!busy) {
+            if (openProgressTimeline != null) {
+                openProgressTimeline.stop();
+            }
+            return;
+        }
+        if (openProgressTimeline == null) {
+            openProgressTimeline = new Timeline(new KeyFrame(javafx.util.Duration.millis(150), event -> updateOpenProgress()));
+            openProgressTimeline.setCycleCount(Timeline.INDEFINITE);
+        }
+        if (openProgressTimeline.getStatus() != javafx.animation.Animation.Status.RUNNING) {
+            openProgressTimeline.play();
+        }
+        long total = 0;
+        long done = 0;
+        for (PendingOpen pending : pendingOpens) {
+            total += pending.size;
+            done += Math.min(pending.done, pending.size);
+        }
+        int percent = total == 0 ? 100 : (int) (done * 100 / total);
+        String what = pendingOpens.size() == 1
+                ? pendingOpens.get(0).path.getFileName().toString()
+                : pendingOpens.size() + " arquivos";
+        updateStatus("Abrindo " + what + "... " + percent + "%");
+    }
+
+    private void showOpenedFile(Path path, LoadedFile loaded) {
+        String name = path.getFileName().toString();
+        Tab tab = new Tab(name);
+        TabData data = buildCodeTab(tab, loaded.content);
+        data.filePath = path;
+        data.symbolsDirty = true;
+        data.encoding = loaded.encoding;
+        data.encodingConfidence = loaded.encodingConfidence;
+        data.lineEnding = loaded.lineEnding;
+        data.eols = loaded.eols;
+        data.preserveEol = loaded.eols.isMixed();
+        String language = detectLanguage(path);
+        if ("text".equals(language)) {
+            setMode(data, false);
+        } else {
+            data.language = language;
+            data.lexer = lexerForLanguage(language);
+            applyHighlight(data);
+        }
+        tab.setUserData(data);
+        tabPane.getTabs().add(tab);
+        tabPane.getSelectionModel().select(tab);
+        markDirty(tab, false);
+        if (miModeText != null && miModeText.isSelected()) {
+            setMode(data, false);
+        }
+        updateStatus("Arquivo aberto: " + name);
+        updateStats();
+        syncEncodingToggle(tab);
+        syncLineEndingToggle(tab);
+        updateEncodingStatus();
+        updateLineEndingStatus();
+        updateLineColStatus();
+        updateSelectionStatus();
+    }
+
+    @FXML
+    public void handleOpenViewer() {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Abrir no visualizador");
         File file = chooser.showOpenDialog(root.getScene().getWindow());
         if (file == null) {
             return;
         }
         try {
-            byte[] bytes = Files.readAllBytes(file.toPath());
-            FileEncoding detected = detectEncoding(bytes);
-            int offset = (detected != null && detected.bom != null) ? detected.bom.length : 0;
-            Charset charset = detected != null ? detected.charset : defaultEncoding.charset;
-            String content = new String(bytes, offset, bytes.length - offset, charset);
-            Tab tab = new Tab(file.getName());
-            TabData data = buildCodeTab(tab, content);
-            data.filePath = file.toPath();
-            data.encoding = detected != null ? detected : defaultEncoding;
-            data.lineEnding = detectLineEnding(content);
-            String language = detectLanguage(file.toPath());
-            if ("text".equals(language)) {
-                setMode(data, false);
-            } else {
-                data.language = language;
-                data.pattern = patternForLanguage(language);
-                applyHighlight(data);
+            openViewer(file);
+        } catch (IOException ex) {
+            showError("Não foi possível abrir o arquivo.", ex.getMessage());
+        }
+    }
+
+    private void openViewer(File file) throws IOException {
+        Path path = file.toPath();
+        byte[] probe;
+        try (InputStream in = Files.newInputStream(path)) {
+            probe = in.readNBytes(CharsetDetector.SAMPLE_BYTES);
+        }
+        CharsetDetector.Detection detection = CharsetDetector.detect(probe, probe.length, probe.length < Files.size(path));
+        FileEncoding encoding = encodingFor(detection, defaultEncoding);
+        int offset = encoding.bom != null ? encoding.bom.length : 0;
+
+        Tab tab = new Tab(file.getName());
+        TabData data = new TabData();
+        data.filePath = path;
+        data.symbolsDirty = true;
+        data.encoding = encoding;
+        data.encodingConfidence = detection.confidence();
+        data.eols = LineEndingMap.scan(new String(probe, offset, probe.length - offset, encoding.charset), defaultLineEnding.kind);
+        data.lineEnding = LineEnding.of(data.eols.dominant());
+        data.preserveEol = data.eols.isMixed();
+        data.codeMode = false;
+        data.language = "text";
+        attachViewer(tab, data);
+        tab.setOnClosed(event -> releaseTab(data));
+        tab.setUserData(data);
+        tabPane.getTabs().add(tab);
+        tabPane.getSelectionModel().select(tab);
+        updateStatus("Visualizando: " + file.getName());
+        updateStats();
+        syncEncodingToggle(tab);
+        syncLineEndingToggle(tab);
+        updateEncodingStatus();
+        updateLineEndingStatus();
+        updateLineColStatus();
+        updateSelectionStatus();
+    }
+
+    private void attachViewer(Tab tab, TabData data) throws IOException {
+        int offset = data.encoding.bom != null ? data.encoding.bom.length : 0;
+        LargeFileViewer viewer = new LargeFileViewer(data.filePath, data.encoding.charset, offset);
+        data.viewer = viewer;
+        viewer.setOnProgress(() -> {
+            if (data == getCurrentData()) {
+                updateStats();
             }
-            tab.setUserData(data);
-            tabPane.getTabs().add(tab);
-            tabPane.getSelectionModel().select(tab);
-            markDirty(tab, false);
-            if (miModeText != null && miModeText.isSelected()) {
-                setMode(data, false);
+        });
+        viewer.view().getSelectionModel().getSelectedIndices().addListener(
+                (javafx.collections.ListChangeListener<Integer>) change -> {
+                    updateViewerLineStatus(data);
+                    updateSelectionStatus(data);
+                });
+        applyFontSize(viewer.view());
+        tab.setContent(viewer.view());
+    }
+
+    private void updateViewerLineStatus(TabData data) {
+        if (lblLineCol == null || data != getCurrentData()) {
+            return;
+        }
+        int selected = data.viewer.view().getSelectionModel().getSelectedIndex();
+        lblLineCol.setText("Ln " + (Math.max(0, selected) + 1));
+    }
+
+    private void showLargeFile(Path path, LoadedFile loaded) throws IOException {
+        String name = path.getFileName().toString();
+        LargeDocument document = loaded.large;
+        Tab tab = new Tab(name);
+        TabData data = buildCodeTab(tab, "");
+        data.large = document;
+        data.filePath = path;
+        data.symbolsDirty = true;
+        data.encoding = loaded.encoding;
+        data.encodingConfidence = loaded.encodingConfidence;
+        data.lineEnding = loaded.lineEnding;
+        setupLargeTab(tab, data);
+        showLargeWindow(data, 0);
+        String language = detectLanguage(path);
+        if ("text".equals(language)) {
+            setMode(data, false);
+        } else {
+            data.language = language;
+            data.lexer = lexerForLanguage(language);
+            applyHighlight(data);
+        }
+        tab.setUserData(data);
+        tabPane.getTabs().add(tab);
+        tabPane.getSelectionModel().select(tab);
+        markDirty(tab, false);
+        if (miModeText != null && miModeText.isSelected()) {
+            setMode(data, false);
+        }
+        updateStatus("Arquivo grande aberto: " + name + " (" + document.lineCount() + " linhas)");
+        updateStats();
+        syncEncodingToggle(tab);
+        syncLineEndingToggle(tab);
+        updateEncodingStatus();
+        updateLineEndingStatus();
+        updateLineColStatus();
+        updateSelectionStatus();
+    }
+
+    private LargeDocument openLargeDocument(Path path, FileEncoding encoding) throws IOException {
+        int offset = encoding.bom != null ? encoding.bom.length : 0;
+        return LargeDocument.open(path, encoding.charset, offset);
+    }
+
+    private void setupLargeTab(Tab tab, TabData data) {
+        Button btnPrev = new Button("Anterior");
+        Button btnNext = new Button("Próximo");
+        TextField tfLine = new TextField();
+        tfLine.setPromptText("Linha");
+        tfLine.setPrefColumnCount(8);
+        Button btnGo = new Button("Ir");
+        data.largeRange = new Label();
+
+        btnPrev.setOnAction(e -> moveLargeWindow(data, data.large.windowStart() - LargeDocument.WINDOW_LINES, -1));
+        btnNext.setOnAction(e -> moveLargeWindow(data, data.large.windowStart() + data.large.windowLines(), -1));
+        Runnable goToLine = () -> {
+            try {
+                long line = Long.parseLong(tfLine.getText().trim()) - 1;
+                line = Math.max(0, Math.min(line, data.large.lineCount() - 1));
+                moveLargeWindow(data, line - LargeDocument.WINDOW_LINES / 2, line);
+            } catch (NumberFormatException ex) {
+                updateStatus("Linha inválida: " + tfLine.getText());
+            }
+        };
+        btnGo.setOnAction(e -> goToLine.run());
+        tfLine.setOnAction(e -> goToLine.run());
+
+        HBox toolbar = new HBox(8, btnPrev, btnNext, tfLine, btnGo, data.largeRange);
+        toolbar.setStyle("-fx-padding: 4 8 4 8; -fx-alignment: center-left;");
+        BorderPane content = new BorderPane(tab.getContent());
+        content.setTop(toolbar);
+        tab.setContent(content);
+    }
+
+    private void moveLargeWindow(TabData data, long start, long caretLine) {
+        try {
+            data.large.commitWindow(data.area.getText());
+            showLargeWindow(data, start);
+            if (caretLine >= 0) {
+                data.area.moveTo((int) (caretLine - data.large.windowStart()), 0);
+                data.area.requestFollowCaret();
             }
-            updateStatus("Arquivo aberto: " + file.getName());
             updateStats();
-            syncEncodingToggle(tab);
-            syncLineEndingToggle(tab);
-            updateEncodingStatus();
-            updateLineEndingStatus();
             updateLineColStatus();
-            updateSelectionStatus();
         } catch (IOException ex) {
-            showError("Não foi possível abrir o arquivo.", ex.getMessage());
+            showError("Não foi possível ler o arquivo.", ex.getMessage());
+        }
+    }
+
+    // The CodeArea only ever holds one window of the piece table; edits stay in the area until
+    // the window moves or the file is saved, and only then are spliced into the table.
+    private void showLargeWindow(TabData data, long start) throws IOException {
+        String text = data.large.loadWindow(start);
+        data.loading = true;
+        data.area.replaceText(text);
+        data.loading = false;
+        data.area.moveTo(0);
+        data.area.getUndoManager().forgetHistory();
+        data.area.setParagraphGraphicFactory(largeLineNumbers(data));
+        long first = data.large.windowStart() + 1;
+        data.largeRange.setText("Linhas " + first + "-" + (first + data.large.windowLines() - 1)
+                + " de " + data.large.lineCount());
+        if (data.codeMode) {
+            applyHighlight(data);
+        }
+    }
+
+    private java.util.function.IntFunction<javafx.scene.Node> largeLineNumbers(TabData data) {
+        long offset = data.large.windowStart();
+        String format = "%" + Long.toString(data.large.lineCount()).length() + "d";
+        return index -> {
+            Label label = new Label(String.format(format, offset + index + 1));
+            label.getStyleClass().add("lineno");
+            label.setStyle("-fx-padding: 0 5 0 5; -fx-font-family: monospace;");
+            return label;
+        };
+    }
+
+    private void saveLargeFile(TabData data, Path path, boolean keepAttributes) throws IOException {
+        data.large.commitWindow(data.area.getText());
+        int caret = data.area.getCaretPosition();
+        FileEncoding encoding = data.encoding == null ? defaultEncoding : data.encoding;
+        LineEnding lineEnding = data.lineEnding == null ? defaultLineEnding : data.lineEnding;
+        try {
+            TextFileWriter.write(path, data.large.lines(), encoding.charset, encoding.bom, lineEnding.sequence,
+                    keepAttributes);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
         }
+        LargeDocument previous = data.large;
+        data.large = openLargeDocument(path, encoding);
+        previous.close();
+        showLargeWindow(data, previous.windowStart());
+        data.area.moveTo(Math.min(caret, data.area.getLength()));
     }
 
     @FXML
@@ -938,6 +1524,10 @@ public class EditorController {
         if (tab == null || data == null) {
             return false;
         }
+        if (data.viewer != null) {
+            updateStatus("Visualizador é somente leitura");
+            return false;
+        }
         Path path = data.filePath;
         if (forceSaveAs || path == null) {
             FileChooser chooser = new FileChooser();
@@ -949,16 +1539,22 @@ public class EditorController {
             path = file.toPath();
         }
         try {
-            String normalized = normalizeLineEndings(data.area.getText(), data.lineEnding);
-            byte[] bytes = encodeText(normalized, data.encoding);
-            Files.write(path, bytes);
+            try {
+                writeFile(data, path, true);
+            } catch (TextFileWriter.AttributesLostException ex) {
+                if (!confirmAttributesLost(ex)) {
+                    return false;
+                }
+                writeFile(data, path, false);
+            }
             data.filePath = path;
+            data.symbolsDirty = true;
             markDirty(tab, false);
             setCurrentFile(data, tab, path);
             String language = detectLanguage(path);
             if (data.codeMode && !"text".equals(language)) {
                 data.language = language;
-                data.pattern = patternForLanguage(language);
+                data.lexer = lexerForLanguage(language);
                 applyHighlight(data);
             }
             updateStatus("Arquivo salvo: " + path.getFileName());
@@ -969,12 +1565,45 @@ public class EditorController {
         }
     }
 
+    private void writeFile(TabData data, Path path, boolean keepAttributes) throws IOException {
+        if (data.large != null) {
+            saveLargeFile(data, path, keepAttributes);
+            return;
+        }
+        FileEncoding encoding = data.encoding == null ? defaultEncoding : data.encoding;
+        LineEnding lineEnding = data.lineEnding == null ? defaultLineEnding : data.lineEnding;
+        LineEndingMap eols = data.eols;
+        TextFileWriter.write(path, data.area.getParagraphs().stream().map(Paragraph::getText).iterator(),
+                encoding.charset, encoding.bom,
+                data.preserveEol ? eols::separatorAfter : line -> lineEnding.sequence, keepAttributes);
+        if (!data.preserveEol) {
+            eols.reset(lineEnding.kind);
+        }
+    }
+
+    private boolean confirmAttributesLost(TextFileWriter.AttributesLostException ex) {
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("Salvar arquivo");
+        alert.setHeaderText(ex.getMessage());
+        alert.setContentText("O arquivo salvo ficará com as permissões padrão. Salvar mesmo assim?");
+        ButtonType btnSave = new ButtonType("Salvar");
+        ButtonType btnCancel = new ButtonType("Cancelar", ButtonBar.ButtonData.CANCEL_CLOSE);
+        alert.getButtonTypes().setAll(btnSave, btnCancel);
+        Optional<ButtonType> result = alert.showAndWait();
+        return result.isPresent() && result.get() == btnSave;
+    }
+
     @FXML
     public void handleCloseTab() {
         Tab tab = tabPane.getSelectionModel().getSelectedItem();
         if (tab != null && confirmClose(tab)) {
-            tabPane.getTabs().remove(tab);
-            if (tabPane.getTabs().isEmpty()) {
+            TabData data = (TabData) tab.getUserData();
+            if (data != null) {
+                releaseTab(data);
+            }
+            hibernator.remove(tab);
+            tabPane.getTabs().remove(tab);
+            if (tabPane.getTabs().isEmpty()) {
                 createNewTab();
             }
             saveDrafts();
@@ -993,6 +1622,7 @@ public class EditorController {
             }
         }
         saveDrafts();
+        draftWriter.awaitIdle(10, TimeUnit.SECONDS);
         Platform.exit();
     }
 
@@ -1025,6 +1655,17 @@ public class EditorController {
 
     @FXML
     public void handleCopy() {
+        TabData data = getCurrentData();
+        if (data != null && data.viewer != null) {
+            try {
+                ClipboardContent content = new ClipboardContent();
+                content.putString(data.viewer.copySelection());
+                Clipboard.getSystemClipboard().setContent(content);
+            } catch (IOException ex) {
+                showError("Não foi possível copiar.", ex.getMessage());
+            }
+            return;
+        }
         CodeArea area = getCurrentArea();
         if (area != null) {
             ClipboardContent content = new ClipboardContent();
@@ -1043,6 +1684,11 @@ public class EditorController {
 
     @FXML
     public void handleSelectAll() {
+        TabData data = getCurrentData();
+        if (data != null && data.viewer != null) {
+            data.viewer.view().getSelectionModel().selectAll();
+            return;
+        }
         CodeArea area = getCurrentArea();
         if (area != null) {
             area.selectAll();
@@ -1073,7 +1719,7 @@ public class EditorController {
         if (data != null) {
             if (data.language == null) {
                 data.language = "java";
-                data.pattern = PATTERN_JAVA;
+                data.lexer = LEXER_JAVA;
             }
             setMode(data, true);
         }
@@ -1104,6 +1750,16 @@ public class EditorController {
         applyEncoding(FileEncoding.UTF16_BE_BOM, false);
     }
 
+    @FXML
+    public void handleEncodingUtf16Le() {
+        applyEncoding(FileEncoding.UTF16_LE, false);
+    }
+
+    @FXML
+    public void handleEncodingUtf16Be() {
+        applyEncoding(FileEncoding.UTF16_BE, false);
+    }
+
     @FXML
     public void handleConvertAnsi() {
         applyEncoding(FileEncoding.ANSI, true);
@@ -1129,6 +1785,16 @@ public class EditorController {
         applyEncoding(FileEncoding.UTF16_BE_BOM, true);
     }
 
+    @FXML
+    public void handleConvertUtf16Le() {
+        applyEncoding(FileEncoding.UTF16_LE, true);
+    }
+
+    @FXML
+    public void handleConvertUtf16Be() {
+        applyEncoding(FileEncoding.UTF16_BE, true);
+    }
+
     @FXML
     public void handleEolWindows() {
         applyLineEnding(LineEnding.CRLF);
@@ -1168,7 +1834,28 @@ public class EditorController {
         if (data.encoding == encoding && defaultEncoding == encoding) {
             return;
         }
+        if (data.viewer != null) {
+            if (markDirty) {
+                syncEncodingToggle(tab);
+                updateStatus("Visualizador é somente leitura");
+                return;
+            }
+            data.viewer.close();
+            data.encoding = encoding;
+            data.encodingConfidence = -1;
+            try {
+                attachViewer(tab, data);
+            } catch (IOException ex) {
+                showError("Não foi possível reabrir o arquivo.", ex.getMessage());
+            }
+            syncEncodingToggle(tab);
+            updateEncodingStatus();
+            updateStats();
+            updateStatus("Codificação: " + encoding.label);
+            return;
+        }
         data.encoding = encoding;
+        data.encodingConfidence = -1;
         defaultEncoding = encoding;
         syncEncodingToggle(tab);
         updateEncodingStatus();
@@ -1187,10 +1874,16 @@ public class EditorController {
         if (tab == null || data == null) {
             return;
         }
-        if (data.lineEnding == lineEnding && defaultLineEnding == lineEnding) {
+        if (data.lineEnding == lineEnding && defaultLineEnding == lineEnding && !data.preserveEol) {
+            return;
+        }
+        if (data.viewer != null) {
+            syncLineEndingToggle(tab);
+            updateStatus("Visualizador é somente leitura");
             return;
         }
         data.lineEnding = lineEnding;
+        data.preserveEol = false;
         defaultLineEnding = lineEnding;
         syncLineEndingToggle(tab);
         updateLineEndingStatus();
@@ -1199,6 +1892,26 @@ public class EditorController {
         updateStatus("Quebra de linha: " + lineEnding.label);
     }
 
+    @FXML
+    public void handleEolPreserve() {
+        Tab tab = tabPane.getSelectionModel().getSelectedItem();
+        TabData data = getCurrentData();
+        if (tab == null || data == null || data.preserveEol) {
+            return;
+        }
+        if (data.viewer != null || data.large != null || !data.eols.isMixed()) {
+            syncLineEndingToggle(tab);
+            updateStatus("Nenhuma quebra de linha mista para preservar");
+            return;
+        }
+        data.preserveEol = true;
+        syncLineEndingToggle(tab);
+        updateLineEndingStatus();
+        markDirty(tab, true);
+        draftsDirty = true;
+        updateStatus("Quebra de linha: preservar original");
+    }
+
     private void showFindReplace(boolean focusReplace) {
         if (findStage == null) {
             buildFindDialog();
@@ -1221,12 +1934,23 @@ public class EditorController {
         tfFind = new TextField();
         tfReplace = new TextField();
         lblFindStatus = new Label();
+        cbFindCase = new CheckBox("Diferenciar maiúsculas");
+        cbFindWord = new CheckBox("Palavra inteira");
+        cbFindRegex = new CheckBox("Expressão regular");
+        cbFindCase.setSelected(true);
 
         Button btnNext = new Button("Próximo");
         Button btnPrev = new Button("Anterior");
         Button btnReplace = new Button("Substituir");
         Button btnReplaceAll = new Button("Substituir Tudo");
 
+        tfFind.textProperty().addListener((obs, oldText, newText) -> refreshFind());
+        cbFindCase.selectedProperty().addListener((obs, oldValue, newValue) -> refreshFind());
+        cbFindWord.selectedProperty().addListener((obs, oldValue, newValue) -> refreshFind());
+        cbFindRegex.selectedProperty().addListener((obs, oldValue, newValue) -> refreshFind());
+        findStage.setOnShown(e -> refreshFind());
+        findStage.setOnHidden(e -> clearFind(tabPane.getSelectionModel().getSelectedItem()));
+
         btnNext.setOnAction(e -> findNext(true));
         btnPrev.setOnAction(e -> findNext(false));
         btnReplace.setOnAction(e -> replaceOnce());
@@ -1242,70 +1966,475 @@ public class EditorController {
         GridPane.setHgrow(tfFind, Priority.ALWAYS);
         GridPane.setHgrow(tfReplace, Priority.ALWAYS);
 
+        HBox options = new HBox(12, cbFindCase, cbFindWord, cbFindRegex);
         HBox actions = new HBox(8, btnPrev, btnNext, btnReplace, btnReplaceAll);
-        VBox rootBox = new VBox(10, grid, actions, lblFindStatus);
+        VBox rootBox = new VBox(10, grid, options, actions, lblFindStatus);
         rootBox.setStyle("-fx-padding: 12;");
 
-        findStage.setScene(new Scene(rootBox, 420, 150));
+        findStage.setScene(new Scene(rootBox, 460, 185));
     }
 
-    private void findNext(boolean forward) {
-        CodeArea area = getCurrentArea();
-        if (area == null) {
+    // The current tab indexes the dialog's query while it is open; other tabs drop their index.
+    // An invalid regular expression clears the index and is reported instead of a count.
+    private void refreshFind() {
+        TabData data = getCurrentData();
+        if (data == null || data.find == null || data.placeholder || tfFind == null) {
             return;
         }
-        String query = tfFind.getText();
-        if (query == null || query.isEmpty()) {
-            lblFindStatus.setText("Digite algo para buscar.");
+        FindQuery query = null;
+        String invalid = null;
+        String text = tfFind.getText();
+        if (findStage != null && findStage.isShowing() && text != null && !text.isEmpty()) {
+            try {
+                query = new FindQuery(text, cbFindRegex.isSelected(), cbFindCase.isSelected(), cbFindWord.isSelected());
+            } catch (PatternSyntaxException ex) {
+                invalid = "Expressão inválida: " + ex.getDescription();
+            }
+        }
+        data.find.setQuery(query);
+        if (invalid != null) {
+            lblFindStatus.setText(invalid);
+        } else {
+            updateFindStatus(data);
+        }
+    }
+
+    private void clearFind(Tab tab) {
+        TabData data = tab == null ? null : (TabData) tab.getUserData();
+        if (data != null && data.find != null) {
+            data.findNextPending = false;
+            data.find.clear();
+        }
+    }
+
+    // A replace under a regex query has to wait for the search to run again before moving on.
+    private void onFindUpdated(TabData data) {
+        if (data.findNextPending && data.find.isReady() && data == getCurrentData()) {
+            data.findNextPending = false;
+            findNext(true);
             return;
         }
-        String text = area.getText();
-        int start = area.getCaretPosition();
-        int index = forward ? text.indexOf(query, start) : text.lastIndexOf(query, Math.max(0, start - 1));
-        if (index == -1 && start != 0) {
-            index = forward ? text.indexOf(query) : text.lastIndexOf(query);
+        updateFindStatus(data);
+    }
+
+    private void updateFindStatus(TabData data) {
+        if (lblFindStatus == null || data != getCurrentData()) {
+            return;
         }
-        if (index == -1) {
+        FindIndex find = data.find;
+        if (!find.isActive()) {
+            lblFindStatus.setText("");
+        } else if (!find.isReady()) {
+            lblFindStatus.setText("Buscando...");
+        } else if (find.error() != null) {
+            lblFindStatus.setText(find.error());
+        } else if (find.count() == 0) {
             lblFindStatus.setText("Nenhuma ocorrência encontrada.");
+        } else {
+            IndexRange selection = data.area.getSelection();
+            int index = find.indexOf(selection.getStart(), selection.getEnd());
+            lblFindStatus.setText(index >= 0
+                    ? (index + 1) + " de " + find.count()
+                    : find.count() + (find.count() == 1 ? " ocorrência" : " ocorrências"));
+        }
+    }
+
+    // Returns the current tab's index when it has a query that finished searching; otherwise
+    // explains why not in the status label.
+    private FindIndex readyFind(TabData data) {
+        if (data == null || data.find == null || data.area == null) {
+            return null;
+        }
+        FindIndex find = data.find;
+        if (!find.isActive()) {
+            if (tfFind.getText() == null || tfFind.getText().isEmpty()) {
+                lblFindStatus.setText("Digite algo para buscar.");
+            }
+            return null;
+        }
+        if (!find.isReady()) {
+            lblFindStatus.setText("Buscando...");
+            return null;
+        }
+        if (find.error() != null) {
+            lblFindStatus.setText(find.error());
+            return null;
+        }
+        return find;
+    }
+
+    private void findNext(boolean forward) {
+        TabData data = getCurrentData();
+        FindIndex find = readyFind(data);
+        if (find == null) {
             return;
         }
-        area.selectRange(index, index + query.length());
+        if (find.count() == 0) {
+            lblFindStatus.setText("Nenhuma ocorrência encontrada.");
+            return;
+        }
+        CodeArea area = data.area;
+        int index = forward
+                ? find.lowerBound(area.getCaretPosition())
+                : find.lowerBound(area.getSelection().getStart()) - 1;
+        if (index >= find.count()) {
+            index = 0;
+        } else if (index < 0) {
+            index = find.count() - 1;
+        }
+        area.selectRange(find.start(index), find.end(index));
         area.requestFollowCaret();
-        lblFindStatus.setText("Ocorrência em " + (index + 1));
+        updateFindStatus(data);
     }
 
     private void replaceOnce() {
-        CodeArea area = getCurrentArea();
-        if (area == null) {
-            return;
-        }
-        String query = tfFind.getText();
-        String replacement = tfReplace.getText();
-        if (query == null || query.isEmpty()) {
-            lblFindStatus.setText("Digite algo para buscar.");
+        TabData data = getCurrentData();
+        FindIndex find = readyFind(data);
+        if (find == null) {
             return;
         }
-        if (area.getSelectedText().equals(query)) {
-            area.replaceSelection(replacement == null ? "" : replacement);
+        CodeArea area = data.area;
+        IndexRange selection = area.getSelection();
+        if (find.indexOf(selection.getStart(), selection.getEnd()) >= 0) {
+            String replacement;
+            try {
+                replacement = find.query().expand(area.getText(), selection.getStart(), selection.getEnd(),
+                        tfReplace.getText() == null ? "" : tfReplace.getText());
+            } catch (InterruptibleCharSequence.BudgetExceededException ex) {
+                lblFindStatus.setText("A substituição excedeu " + FindQuery.TIME_BUDGET_MILLIS + " ms e foi interrompida.");
+                return;
+            } catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+                lblFindStatus.setText("Substituição inválida: " + ex.getMessage());
+                return;
+            }
+            if (replacement != null) {
+                area.replaceText(selection.getStart(), selection.getEnd(), replacement);
+                if (!find.isReady()) {
+                    data.findNextPending = true;
+                    return;
+                }
+            }
         }
         findNext(true);
     }
 
     private void replaceAll() {
-        CodeArea area = getCurrentArea();
-        if (area == null) {
+        TabData data = getCurrentData();
+        FindIndex find = readyFind(data);
+        if (find == null) {
+            return;
+        }
+        int replaced;
+        try {
+            replaced = find.replaceAll(tfReplace.getText() == null ? "" : tfReplace.getText());
+        } catch (InterruptibleCharSequence.BudgetExceededException ex) {
+            lblFindStatus.setText("A substituição excedeu " + FindQuery.TIME_BUDGET_MILLIS + " ms e foi interrompida.");
+            return;
+        } catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+            lblFindStatus.setText("Substituição inválida: " + ex.getMessage());
+            return;
+        }
+        if (replaced == 0) {
+            lblFindStatus.setText("Nenhuma ocorrência encontrada.");
+        } else {
+            lblFindStatus.setText(replaced + (replaced == 1 ? " ocorrência substituída." : " ocorrências substituídas."));
+        }
+    }
+
+    @FXML
+    public void handleFindInFiles() {
+        if (filesStage == null) {
+            buildFindInFilesDialog();
+        }
+        if (tfFilesFolder.getText().isBlank()) {
+            TabData data = getCurrentData();
+            Path folder = data == null || data.filePath == null ? null : data.filePath.toAbsolutePath().getParent();
+            tfFilesFolder.setText(folder != null ? folder.toString() : System.getProperty("user.home"));
+        }
+        filesStage.show();
+        filesStage.toFront();
+        tfFilesQuery.requestFocus();
+    }
+
+    private void buildFindInFilesDialog() {
+        filesStage = new Stage();
+        filesStage.setTitle("Buscar em Arquivos");
+        filesStage.initModality(Modality.NONE);
+        filesStage.initOwner(root.getScene().getWindow());
+
+        tfFilesQuery = new TextField();
+        tfFilesFolder = new TextField();
+        tfFilesFilter = new TextField();
+        tfFilesFilter.setPromptText("*.java, *.xml");
+        lblFilesStatus = new Label();
+        cbFilesCase = new CheckBox("Diferenciar maiúsculas");
+        cbFilesWord = new CheckBox("Palavra inteira");
+        cbFilesRegex = new CheckBox("Expressão regular");
+        cbFilesIndex = new CheckBox("Indexar pasta");
+        lblFilesIndex = new Label();
+        cbFilesCase.setSelected(true);
+        lvFilesResults = new ListView<>();
+        lvFilesResults.setFixedCellSize(24);
+        lvFilesResults.setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(FileSearch.Hit hit, boolean empty) {
+                super.updateItem(hit, empty);
+                setText(empty || hit == null ? null : describeHit(hit));
+            }
+        });
+
+        Button btnBrowse = new Button("Procurar...");
+        Button btnSearch = new Button("Buscar");
+        Button btnCancel = new Button("Cancelar");
+
+        btnBrowse.setOnAction(e -> {
+            DirectoryChooser chooser = new DirectoryChooser();
+            chooser.setTitle("Pasta para buscar");
+            File current = new File(tfFilesFolder.getText());
+            if (current.isDirectory()) {
+                chooser.setInitialDirectory(current);
+            }
+            File folder = chooser.showDialog(filesStage);
+            if (folder != null) {
+                tfFilesFolder.setText(folder.getAbsolutePath());
+            }
+        });
+        btnSearch.setOnAction(e -> startFileSearch());
+        tfFilesQuery.setOnAction(e -> startFileSearch());
+        btnCancel.setOnAction(e -> {
+            if (fileSearch != null) {
+                fileSearch.cancel();
+            }
+        });
+        lvFilesResults.setOnMouseClicked(e -> {
+            if (e.getClickCount() == 2) {
+                openHit(lvFilesResults.getSelectionModel().getSelectedItem());
+            }
+        });
+        lvFilesResults.setOnKeyPressed(e -> {
+            if (e.getCode() == KeyCode.ENTER) {
+                openHit(lvFilesResults.getSelectionModel().getSelectedItem());
+            }
+        });
+        filesStage.setOnHidden(e -> {
+            if (fileSearch != null) {
+                fileSearch.cancel();
+            }
+        });
+
+        GridPane grid = new GridPane();
+        grid.setHgap(8);
+        grid.setVgap(8);
+        grid.add(new Label("Buscar:"), 0, 0);
+        grid.add(tfFilesQuery, 1, 0, 2, 1);
+        grid.add(new Label("Pasta:"), 0, 1);
+        grid.add(tfFilesFolder, 1, 1);
+        grid.add(btnBrowse, 2, 1);
+        grid.add(new Label("Arquivos:"), 0, 2);
+        grid.add(tfFilesFilter, 1, 2, 2, 1);
+        GridPane.setHgrow(tfFilesQuery, Priority.ALWAYS);
+        GridPane.setHgrow(tfFilesFolder, Priority.ALWAYS);
+        GridPane.setHgrow(tfFilesFilter, Priority.ALWAYS);
+
+        cbFilesIndex.selectedProperty().addListener((obs, oldValue, newValue) -> {
+            if (newValue) {
+                Path folder = filesFolder();
+                if (folder != null) {
+                    workspaceIndexFor(folder);
+                }
+            } else {
+                closeWorkspaceIndex();
+            }
+        });
+
+        HBox options = new HBox(12, cbFilesCase, cbFilesWord, cbFilesRegex, cbFilesIndex);
+        HBox actions = new HBox(8, btnSearch, btnCancel, lblFilesStatus);
+        VBox.setVgrow(lvFilesResults, Priority.ALWAYS);
+        VBox rootBox = new VBox(10, grid, options, lblFilesIndex, actions, lvFilesResults);
+        rootBox.setStyle("-fx-padding: 12;");
+
+        filesStage.setScene(new Scene(rootBox, 720, 480));
+    }
+
+    private void startFileSearch() {
+        if (fileSearch != null) {
+            fileSearch.cancel();
+            fileSearch = null;
+        }
+        lvFilesResults.getItems().clear();
+        String text = tfFilesQuery.getText();
+        if (text == null || text.isEmpty()) {
+            lblFilesStatus.setText("");
             return;
         }
-        String query = tfFind.getText();
-        String replacement = tfReplace.getText();
-        if (query == null || query.isEmpty()) {
-            lblFindStatus.setText("Digite algo para buscar.");
+        Path folder = filesFolder();
+        if (folder == null) {
             return;
         }
-        String text = area.getText();
-        String replaced = text.replace(query, replacement == null ? "" : replacement);
-        area.replaceText(replaced);
-        lblFindStatus.setText("Substituição concluída.");
+        FindQuery query;
+        try {
+            query = new FindQuery(text, cbFilesRegex.isSelected(), cbFilesCase.isSelected(), cbFilesWord.isSelected());
+        } catch (PatternSyntaxException ex) {
+            lblFilesStatus.setText("Expressão inválida: " + ex.getDescription());
+            return;
+        }
+        FileEncoding fallback = defaultEncoding;
+        FileSearch search = new FileSearch(query, detection -> encodingFor(detection, fallback).charset,
+                this::onFileSearchUpdate);
+        TrigramIndex index = cbFilesIndex.isSelected() ? workspaceIndexFor(folder) : null;
+        try {
+            search.start(folder, tfFilesFilter.getText(), index == null ? null : () -> index.candidates(query));
+        } catch (IllegalArgumentException ex) {
+            lblFilesStatus.setText("Filtro inválido: " + ex.getMessage());
+            return;
+        }
+        fileSearch = search;
+        lblFilesStatus.setText("Buscando...");
+    }
+
+    private void onFileSearchUpdate(FileSearch search, List<FileSearch.Hit> hits, FileSearch.Progress progress) {
+        if (search != fileSearch) {
+            return;
+        }
+        lvFilesResults.getItems().addAll(hits);
+        String found = progress.hits() + (progress.hits() == 1 ? " ocorrência" : " ocorrências")
+                + " em " + progress.matchedFiles() + (progress.matchedFiles() == 1 ? " arquivo" : " arquivos");
+        if (!progress.done()) {
+            lblFilesStatus.setText("Buscando... " + found + " (" + progress.files() + " lidos)");
+            return;
+        }
+        String summary = found + " (" + progress.files() + " arquivos lidos em "
+                + String.format("%.1f", progress.elapsedMillis() / 1000.0) + " s"
+                + (progress.candidates() >= 0 ? ", " + progress.candidates() + " candidatos pelo índice" : "") + ")";
+        if (progress.truncated()) {
+            summary += " - limite de " + FileSearch.MAX_HITS + " atingido";
+        } else if (progress.cancelled()) {
+            summary += " - cancelada";
+        }
+        lblFilesStatus.setText(summary);
+        fileSearch = null;
+    }
+
+    private Path filesFolder() {
+        Path folder;
+        try {
+            folder = Paths.get(tfFilesFolder.getText().trim());
+        } catch (InvalidPathException ex) {
+            lblFilesStatus.setText("Pasta inválida: " + tfFilesFolder.getText());
+            return null;
+        }
+        if (!Files.isDirectory(folder)) {
+            lblFilesStatus.setText("Pasta não encontrada: " + folder);
+            return null;
+        }
+        return folder.toAbsolutePath().normalize();
+    }
+
+    // One folder is indexed at a time: it is loaded from (or built into) the app-data folder and
+    // kept up to date until another folder is searched or the option is turned off.
+    private TrigramIndex workspaceIndexFor(Path folder) {
+        if (workspaceIndex != null && workspaceIndex.root().equals(folder)) {
+            return workspaceIndex;
+        }
+        closeWorkspaceIndex();
+        FileEncoding fallback = defaultEncoding;
+        TrigramIndex index = new TrigramIndex(folder, getDraftFile().resolveSibling(INDEX_DIR),
+                detection -> encodingFor(detection, fallback).charset);
+        index.setListener(this::updateIndexStatus);
+        workspaceIndex = index;
+        index.open();
+        updateIndexStatus();
+        return index;
+    }
+
+    private void closeWorkspaceIndex() {
+        if (workspaceIndex != null) {
+            workspaceIndex.close();
+            workspaceIndex = null;
+        }
+        updateIndexStatus();
+    }
+
+    private void updateIndexStatus() {
+        if (lblFilesIndex == null) {
+            return;
+        }
+        if (workspaceIndex == null) {
+            lblFilesIndex.setText("");
+            return;
+        }
+        TrigramIndex.Status status = workspaceIndex.status();
+        String text = switch (status.state()) {
+            case LOADING -> "Índice: carregando...";
+            case BUILDING -> "Índice: construindo... " + status.progress() + " arquivos";
+            case FAILED -> "Índice indisponível: " + status.error();
+            case READY -> "Índice: " + status.files() + " arquivos, "
+                    + String.format("%.1f", status.indexBytes() / (1024.0 * 1024.0)) + " MB, construído em "
+                    + String.format("%.1f", status.buildMillis() / 1000.0) + " s"
+                    + (status.dirty() > 0 ? ", " + status.dirty() + " alterados desde então" : "");
+        };
+        if (!status.watching()) {
+            text += " (alterações na pasta não estão sendo monitoradas; as buscas leem todos os arquivos)";
+        }
+        lblFilesIndex.setText(text);
+    }
+
+    private String describeHit(FileSearch.Hit hit) {
+        Path file = hit.file();
+        String folder = tfFilesFolder.getText().trim();
+        try {
+            Path base = Paths.get(folder).toAbsolutePath().normalize();
+            if (file.startsWith(base)) {
+                file = base.relativize(file);
+            }
+        } catch (InvalidPathException ignored) {
+        }
+        return file + ":" + (hit.line() + 1) + ":  " + hit.preview();
+    }
+
+    // Goes through the normal open path, so the file gets the same encoding, size tier and tab it
+    // would get from Abrir; a file that is already open is only selected.
+    private void openHit(FileSearch.Hit hit) {
+        if (hit == null) {
+            return;
+        }
+        for (Tab tab : tabPane.getTabs()) {
+            TabData data = (TabData) tab.getUserData();
+            if (data != null && data.filePath != null
+                    && data.filePath.toAbsolutePath().normalize().equals(hit.file())) {
+                tabPane.getSelectionModel().select(tab);
+                revealHit((TabData) tab.getUserData(), hit);
+                return;
+            }
+        }
+        openFile(hit.file().toFile(), hit);
+    }
+
+    private void revealHit(TabData data, FileSearch.Hit hit) {
+        if (data == null || hit == null) {
+            return;
+        }
+        if (data.viewer != null) {
+            ListView<Long> view = data.viewer.view();
+            int index = (int) Math.min(hit.line(), Math.max(0, view.getItems().size() - 1));
+            view.getSelectionModel().clearAndSelect(index);
+            view.scrollTo(Math.max(0, index - 5));
+            view.requestFocus();
+            return;
+        }
+        long paragraph = hit.line();
+        if (data.large != null) {
+            long line = Math.min(paragraph, data.large.lineCount() - 1);
+            moveLargeWindow(data, line - LargeDocument.WINDOW_LINES / 2, line);
+            paragraph = line - data.large.windowStart();
+        }
+        CodeArea area = data.area;
+        int par = (int) Math.max(0, Math.min(paragraph, area.getParagraphs().size() - 1));
+        int length = area.getParagraphLength(par);
+        int column = Math.min(hit.column(), length);
+        area.selectRange(par, column, par, Math.min(column + hit.length(), length));
+        area.requestFollowCaret();
+        area.requestFocus();
     }
 
     @FXML
@@ -1390,14 +2519,14 @@ public class EditorController {
         return "java";
     }
 
-    private static Pattern patternForLanguage(String language) {
+    private static Lexer lexerForLanguage(String language) {
         if ("js".equals(language)) {
-            return PATTERN_JS;
+            return LEXER_JS;
         }
         if ("py".equals(language)) {
-            return PATTERN_PY;
+            return LEXER_PY;
         }
-        return PATTERN_JAVA;
+        return LEXER_JAVA;
     }
 
     private static String[] getKeywordsForLanguage(String language) {
@@ -1410,60 +2539,36 @@ public class EditorController {
         return KEYWORDS;
     }
 
-    private FileEncoding detectEncoding(byte[] bytes) {
-        if (startsWith(bytes, BOM_UTF8)) {
-            return FileEncoding.UTF8_BOM;
-        }
-        if (startsWith(bytes, BOM_UTF16_LE)) {
-            return FileEncoding.UTF16_LE_BOM;
-        }
-        if (startsWith(bytes, BOM_UTF16_BE)) {
-            return FileEncoding.UTF16_BE_BOM;
-        }
-        return null;
+    private static FileEncoding encodingFor(CharsetDetector.Detection detection, FileEncoding fallback) {
+        return switch (detection.kind()) {
+            case UTF8_BOM -> FileEncoding.UTF8_BOM;
+            case UTF16_LE_BOM -> FileEncoding.UTF16_LE_BOM;
+            case UTF16_BE_BOM -> FileEncoding.UTF16_BE_BOM;
+            case UTF16_LE -> FileEncoding.UTF16_LE;
+            case UTF16_BE -> FileEncoding.UTF16_BE;
+            case UTF8 -> FileEncoding.UTF8;
+            case LEGACY -> FileEncoding.ANSI;
+            case ASCII -> fallback.charset.equals(StandardCharsets.UTF_16LE)
+                    || fallback.charset.equals(StandardCharsets.UTF_16BE) ? FileEncoding.UTF8 : fallback;
+        };
     }
 
-    private boolean startsWith(byte[] bytes, byte[] prefix) {
-        if (bytes == null || prefix == null || bytes.length < prefix.length) {
-            return false;
-        }
-        for (int i = 0; i < prefix.length; i++) {
-            if (bytes[i] != prefix[i]) {
-                return false;
+    private static Charset ansiCharset() {
+        String name = System.getProperty("native.encoding");
+        try {
+            if (name != null) {
+                Charset charset = Charset.forName(name);
+                if (!charset.equals(StandardCharsets.UTF_8) && !charset.equals(StandardCharsets.US_ASCII)) {
+                    return charset;
+                }
             }
+        } catch (IllegalArgumentException ignored) {
         }
-        return true;
+        return Charset.forName("windows-1252");
     }
 
     private LineEnding detectLineEnding(String text) {
-        if (text == null || text.isEmpty()) {
-            return defaultLineEnding;
-        }
-        if (text.contains("\r\n")) {
-            return LineEnding.CRLF;
-        }
-        if (text.contains("\r")) {
-            return LineEnding.CR;
-        }
-        return LineEnding.LF;
-    }
-
-    private String normalizeLineEndings(String text, LineEnding lineEnding) {
-        String normalized = text == null ? "" : text.replace("\r\n", "\n").replace("\r", "\n");
-        LineEnding target = lineEnding == null ? defaultLineEnding : lineEnding;
-        return normalized.replace("\n", target.sequence);
-    }
-
-    private byte[] encodeText(String text, FileEncoding encoding) {
-        FileEncoding enc = encoding == null ? defaultEncoding : encoding;
-        byte[] content = (text == null ? "" : text).getBytes(enc.charset);
-        if (enc.bom == null || enc.bom.length == 0) {
-            return content;
-        }
-        byte[] out = new byte[enc.bom.length + content.length];
-        System.arraycopy(enc.bom, 0, out, 0, enc.bom.length);
-        System.arraycopy(content, 0, out, enc.bom.length, content.length);
-        return out;
+        return LineEnding.of(LineEndingMap.scan(text == null ? "" : text, defaultLineEnding.kind).dominant());
     }
 
     private String loadAppVersion() {
@@ -1622,62 +2727,119 @@ public class EditorController {
     }
 
     private Path buildDraftPath(String dirName) {
-        String base = System.getenv("LOCALAPPDATA");
+        String base = System.getProperty("codepad.dataDir");
+        if (base == null || base.isBlank()) {
+            base = System.getenv("LOCALAPPDATA");
+        }
         if (base == null || base.isBlank()) {
             base = System.getProperty("user.home");
         }
         return Paths.get(base, dirName, DRAFTS_FILE);
     }
 
+    private Path getDraftDir() {
+        return getDraftFile().resolveSibling(JOURNAL_DIR);
+    }
+
+    // Each tab keeps its own journal, so an autosave only hands over what was typed since the last
+    // one; the writer thread does the disk work, and the manifest is rewritten only when tabs are
+    // opened, closed or reordered.
     private void saveDrafts() {
-        try {
-            List<DraftEntry> entries = new ArrayList<>();
-            for (Tab tab : tabPane.getTabs()) {
-                TabData data = (TabData) tab.getUserData();
-                if (data == null) {
-                    continue;
-                }
-                String text = data.area.getText();
-                if ((text == null || text.isEmpty()) && data.filePath == null) {
-                    continue;
+        Path dir = getDraftDir();
+        List<DraftJournal> live = new ArrayList<>();
+        for (Tab tab : tabPane.getTabs()) {
+            TabData data = (TabData) tab.getUserData();
+            if (data != null && data.brokenJournal != null) {
+                live.add(data.brokenJournal);
+            }
+            if (data != null && data.placeholder && data.hibernated == null) {
+                live.add(data.journal);
+                continue;
+            }
+            if (data == null || data.large != null || data.viewer != null) {
+                continue;
+            }
+            int length = data.placeholder ? data.hibernated.length() : data.area.getLength();
+            if (length == 0 && data.filePath == null) {
+                data.journal = null;
+                continue;
+            }
+            if (data.journal == null) {
+                data.journal = DraftJournal.create(dir);
+            }
+            Supplier<String> text = data.placeholder ? data.hibernated::text : data.area::getText;
+            draftWriter.save(data.journal, draftMeta(tab, data), text);
+            live.add(data.journal);
+        }
+        if (!live.equals(draftJournals)) {
+            draftWriter.writeManifest(dir, live, getDraftFile());
+            for (DraftJournal journal : draftJournals) {
+                if (!live.contains(journal)) {
+                    draftWriter.delete(journal);
                 }
-                DraftEntry e = new DraftEntry();
-                e.title = tab.getText();
-                e.filePath = data.filePath == null ? "" : data.filePath.toString();
-                e.codeMode = data.codeMode;
-                e.language = data.language == null ? "java" : data.language;
-                e.content = text == null ? "" : text;
-                e.encoding = (data.encoding == null ? defaultEncoding : data.encoding).name();
-                e.lineEnding = (data.lineEnding == null ? defaultLineEnding : data.lineEnding).name();
-                entries.add(e);
-            }
-
-            Path file = getDraftFile();
-            if (entries.isEmpty()) {
-                Files.deleteIfExists(file);
-                draftsDirty = false;
-                return;
             }
-            Files.createDirectories(file.getParent());
-            StringBuilder sb = new StringBuilder();
-            sb.append("DRAFTS_V2").append("\n");
-            for (DraftEntry e : entries) {
-                sb.append(b64(e.title)).append("\n");
-                sb.append(b64(e.filePath)).append("\n");
-                sb.append(e.codeMode ? "1" : "0").append("\n");
-                sb.append(b64(e.language)).append("\n");
-                sb.append(b64(e.encoding)).append("\n");
-                sb.append(b64(e.lineEnding)).append("\n");
-                sb.append(b64(e.content)).append("\n");
-                sb.append("---").append("\n");
-            }
-            Files.writeString(file, sb.toString(), StandardCharsets.UTF_8);
-            draftsDirty = false;
-        } catch (IOException ignored) {
+            draftJournals = live;
         }
+        draftsDirty = false;
+    }
+
+    private DraftJournal.Meta draftMeta(Tab tab, TabData data) {
+        return new DraftJournal.Meta(
+                tab.getText(),
+                data.filePath == null ? "" : data.filePath.toString(),
+                data.codeMode,
+                data.language == null ? "java" : data.language,
+                (data.encoding == null ? defaultEncoding : data.encoding).name(),
+                (data.lineEnding == null ? defaultLineEnding : data.lineEnding).name());
     }
 
     private boolean loadDrafts() {
+        Path dir = getDraftDir();
+        List<DraftJournal.Entry> entries;
+        try {
+            entries = DraftJournal.readManifest(dir);
+        } catch (IOException ex) {
+            entries = null;
+        }
+        if (entries == null) {
+            boolean created = loadLegacyDrafts();
+            if (created) {
+                saveDrafts();
+            }
+            return created;
+        }
+        for (DraftJournal.Entry entry : entries) {
+            DraftJournal journal = DraftJournal.open(dir, entry);
+            restorePlaceholder(journal, entry);
+            draftJournals.add(journal);
+        }
+        try {
+            DraftJournal.deleteOrphans(dir, entries);
+        } catch (IOException ignored) {
+        }
+        finishDraftRestore(!entries.isEmpty());
+        draftsDirty = false;
+        return !entries.isEmpty();
+    }
+
+    private void finishDraftRestore(boolean created) {
+        if (created) {
+            tabPane.getSelectionModel().selectFirst();
+            Tab selected = tabPane.getSelectionModel().getSelectedItem();
+            materialize(selected);
+            syncModeToggle(selected);
+            syncEncodingToggle(selected);
+            syncLineEndingToggle(selected);
+            updateStats();
+            updateLineColStatus();
+            updateSelectionStatus();
+            updateEncodingStatus();
+            updateLineEndingStatus();
+            updateZoomStatus();
+        }
+    }
+
+    private boolean loadLegacyDrafts() {
         Path file = getDraftFile();
         if (!Files.exists(file)) {
             Path legacy = getLegacyDraftFile();
@@ -1714,7 +2876,8 @@ public class EditorController {
                     if (i < lines.size() && "---".equals(lines.get(i))) {
                         i++;
                     }
-                    created |= restoreDraft(title, path, codeMode, language, encoding, lineEnding, content);
+                    restoreDraft(title, path, codeMode, language, encoding, lineEnding, content);
+                    created = true;
                 } else {
                     if (i + 4 >= lines.size()) {
                         break;
@@ -1727,22 +2890,11 @@ public class EditorController {
                     if (i < lines.size() && "---".equals(lines.get(i))) {
                         i++;
                     }
-                    created |= restoreDraft(title, path, codeMode, language, null, null, content);
+                    restoreDraft(title, path, codeMode, language, null, null, content);
+                    created = true;
                 }
             }
-            if (created) {
-                tabPane.getSelectionModel().selectFirst();
-                Tab selected = tabPane.getSelectionModel().getSelectedItem();
-                syncModeToggle(selected);
-                syncEncodingToggle(selected);
-                syncLineEndingToggle(selected);
-                updateStats();
-                updateLineColStatus();
-                updateSelectionStatus();
-                updateEncodingStatus();
-                updateLineEndingStatus();
-                updateZoomStatus();
-            }
+            finishDraftRestore(created);
             draftsDirty = false;
             return created;
         } catch (IOException ex) {
@@ -1750,13 +2902,13 @@ public class EditorController {
         }
     }
 
-    private boolean restoreDraft(String title, String path, String codeMode, String language,
+    private TabData restoreDraft(String title, String path, String codeMode, String language,
                                  String encoding, String lineEnding, String content) {
         Tab tab = new Tab(title == null || title.isBlank() ? "Sem Titulo" : title);
         TabData data = buildCodeTab(tab, content == null ? "" : content);
         data.filePath = (path == null || path.isBlank()) ? null : Paths.get(path);
         data.language = (language == null || language.isBlank()) ? "java" : language;
-        data.pattern = patternForLanguage(data.language);
+        data.lexer = lexerForLanguage(data.language);
         data.encoding = parseEncoding(encoding);
         data.lineEnding = parseLineEnding(lineEnding);
         if ("0".equals(codeMode)) {
@@ -1767,7 +2919,138 @@ public class EditorController {
         tab.setUserData(data);
         tabPane.getTabs().add(tab);
         markDirty(tab, data.filePath == null && content != null && !content.isEmpty());
-        return true;
+        return data;
+    }
+
+    // Restored tabs start out holding only their table of contents row; the draft is read and the
+    // CodeArea, listeners and highlighting are built when the tab is first selected.
+    private void restorePlaceholder(DraftJournal journal, DraftJournal.Entry entry) {
+        DraftJournal.Meta meta = entry.meta();
+        Tab tab = new Tab(meta.title() == null || meta.title().isBlank() ? "Sem Titulo" : meta.title());
+        TabData data = new TabData();
+        data.placeholder = true;
+        data.journal = journal;
+        data.filePath = meta.filePath() == null || meta.filePath().isBlank() ? null : Paths.get(meta.filePath());
+        data.codeMode = meta.codeMode();
+        data.language = meta.language() == null || meta.language().isBlank() ? "java" : meta.language();
+        data.lexer = lexerForLanguage(data.language);
+        data.encoding = parseEncoding(meta.encoding());
+        data.lineEnding = parseLineEnding(meta.lineEnding());
+        data.dirty = data.filePath == null && entry.rawLength() > 0;
+        preparePlaceholder(tab, data);
+        tabPane.getTabs().add(tab);
+    }
+
+    private void preparePlaceholder(Tab tab, TabData data) {
+        tab.setUserData(data);
+        tab.setContent(null);
+        tab.setOnCloseRequest(event -> {
+            if (!confirmClose(tab)) {
+                event.consume();
+            }
+        });
+        tab.setOnClosed(event -> {
+            hibernator.remove(tab);
+            updateEditorsStatus();
+            saveDrafts();
+        });
+    }
+
+    private void materialize(Tab tab) {
+        TabData placeholder = tab == null ? null : (TabData) tab.getUserData();
+        if (placeholder == null || !placeholder.placeholder) {
+            return;
+        }
+        String content;
+        DraftJournal journal = placeholder.journal;
+        DraftJournal broken = placeholder.brokenJournal;
+        if (placeholder.hibernated != null) {
+            content = placeholder.hibernated.text();
+            hibernator.woke(tab);
+        } else {
+            try {
+                content = journal.recover();
+            } catch (IOException ex) {
+                // The tab opens empty on a fresh journal; the unreadable one is kept on disk.
+                content = "";
+                broken = journal;
+                journal = null;
+                updateStatus("Não foi possível restaurar o rascunho: " + ex.getMessage());
+            }
+        }
+        TabData data = buildCodeTab(tab, content);
+        copyTabState(placeholder, data);
+        data.journal = journal;
+        data.brokenJournal = broken;
+        if (data.eols == null) {
+            data.eols = LineEndingMap.uniform(data.lineEnding.kind, data.area.getParagraphs().size() - 1);
+        }
+        if (!placeholder.codeMode) {
+            setMode(data, false);
+        } else if (data.lexer != LEXER_JAVA) {
+            applyHighlight(data);
+        }
+        tab.setUserData(data);
+        markDirty(tab, placeholder.dirty);
+        if (placeholder.hibernated != null) {
+            placeholder.hibernated.restore(data.area);
+        }
+    }
+
+    private void trackEditor(Tab tab) {
+        TabData data = tab == null ? null : (TabData) tab.getUserData();
+        if (data == null || data.placeholder || data.large != null || data.viewer != null) {
+            return;
+        }
+        hibernator.touch(tab, TabHibernator.estimate(data.area.getLength(), data.area.getParagraphs().size()));
+        for (Tab victim : hibernator.victims(tab)) {
+            hibernate(victim);
+        }
+        updateEditorsStatus();
+    }
+
+    // Swaps a background tab's editor for a compressed copy of its text, caret and scroll
+    // position; the CodeArea, its undo history and style spans are released until it is selected.
+    private void hibernate(Tab tab) {
+        TabData data = (TabData) tab.getUserData();
+        if (data == null || data.placeholder || data.loading || data.large != null || data.viewer != null) {
+            hibernator.remove(tab);
+            return;
+        }
+        TabData placeholder = new TabData();
+        placeholder.placeholder = true;
+        placeholder.hibernated = HibernatedEditor.capture(data.area);
+        copyTabState(data, placeholder);
+        placeholder.codeMode = data.codeMode;
+        placeholder.dirty = data.dirty;
+        placeholder.journal = data.journal;
+        placeholder.brokenJournal = data.brokenJournal;
+        releaseTab(data);
+        preparePlaceholder(tab, placeholder);
+        hibernator.hibernated(tab, placeholder.hibernated.compressedBytes());
+    }
+
+    private void copyTabState(TabData from, TabData to) {
+        to.filePath = from.filePath;
+        to.language = from.language;
+        to.lexer = from.lexer;
+        to.encoding = from.encoding;
+        to.encodingConfidence = from.encodingConfidence;
+        to.lineEnding = from.lineEnding;
+        to.eols = from.eols;
+        to.preserveEol = from.preserveEol;
+    }
+
+    private void updateEditorsStatus() {
+        if (lblEditors == null) {
+            return;
+        }
+        int hibernated = hibernator.hibernatedCount();
+        String text = "Editores: " + hibernator.liveCount();
+        if (hibernated > 0) {
+            text += " | Hibernados: " + hibernated + " (~" + (hibernator.savedBytes() + 512 * 1024) / (1024 * 1024) + " MB)";
+        }
+        lblEditors.setText(text);
     }
 
     private FileEncoding parseEncoding(String value) {
@@ -1802,11 +3085,26 @@ public class EditorController {
         autosaveTimeline.play();
     }
 
-    private String b64(String s) {
-        if (s == null) {
-            return "";
-        }
-        return Base64.getEncoder().encodeToString(s.getBytes(StandardCharsets.UTF_8));
+    // Hands the text of edited tabs to the shared dictionary every couple of seconds; the copy is
+    // taken here on the FX thread, the tokenizing happens on the indexer thread.
+    private void startSymbolIndexing() {
+        symbolTimeline = new Timeline(new KeyFrame(javafx.util.Duration.seconds(SYMBOL_INDEX_SECONDS), event -> {
+            for (Tab tab : tabPane.getTabs()) {
+                TabData data = (TabData) tab.getUserData();
+                if (data == null || data.placeholder || !data.symbolsDirty || data.area == null
+                        || data.large != null || data.viewer != null || data.loading) {
+                    continue;
+                }
+                data.symbolsDirty = false;
+                if (data.area.getLength() > SYMBOL_INDEX_MAX_CHARS) {
+                    continue;
+                }
+                Path folder = data.filePath == null ? null : data.filePath.toAbsolutePath().getParent();
+                symbols.update(tab, data.area.getText(), folder);
+            }
+        }));
+        symbolTimeline.setCycleCount(Timeline.INDEFINITE);
+        symbolTimeline.play();
     }
 
     private String fromB64(String s) {
@@ -0,0 +1,158 @@
+package org.example.editor;
+
+import javafx.scene.control.IndexRange;
+import org.fxmisc.richtext.CodeArea;
+import org.fxmisc.richtext.model.PlainTextChange;
+import org.fxmisc.richtext.model.TwoDimensional;
+
+import java.util.List;
+
+public final class DocumentStats {
+
+    private final CodeArea area;
+    private int lines;
+    private int characters;
+    private int words;
+
+    public DocumentStats(CodeArea area) {
+        this.area = area;
+        recount();
+    }
+
+    public int lines() {
+        return lines;
+    }
+
+    public int characters() {
+        return characters;
+    }
+
+    public int words() {
+        return words;
+    }
+
+    public void recount() {
+        WordCounter counter = new WordCounter();
+        int count = area.getParagraphs().size();
+        for (int i = 0; i < count; i++) {
+            String text = area.getParagraph(i).getText();
+            counter.feed(text, 0, text.length());
+            counter.feedBreak();
+        }
+        lines = count;
+        characters = area.getLength();
+        words = counter.count;
+    }
+
+    public void update(List<PlainTextChange> changes) {
+        for (int i = 0; i < changes.size(); i++) {
+            PlainTextChange change = changes.get(i);
+            if (i > 0 && change.getPosition() < changes.get(i - 1).getInsertionEnd()) {
+                recount();
+                return;
+            }
+            int limit = i + 1 < changes.size() ? changes.get(i + 1).getPosition() : Integer.MAX_VALUE;
+            if (!apply(change, limit)) {
+                recount();
+                return;
+            }
+        }
+        if (lines != area.getParagraphs().size() || characters != area.getLength()) {
+            recount();
+        }
+    }
+
+    // Word runs never cross whitespace, so the delta only depends on the edited text plus the
+    // non-whitespace context touching both edges; past `limit` a later change of the batch may
+    // already have rewritten that context.
+    private boolean apply(PlainTextChange change, int limit) {
+        String removed = change.getRemoved();
+        String inserted = change.getInserted();
+        characters += inserted.length() - removed.length();
+        lines += countBreaks(inserted) - countBreaks(removed);
+
+        TwoDimensional.Position start = area.offsetToPosition(change.getPosition(), TwoDimensional.Bias.Forward);
+        String left = area.getParagraph(start.getMajor()).getText();
+        int leftEnd = start.getMinor();
+        int leftStart = leftEnd;
+        while (leftStart > 0 && !isSpace(left.charAt(leftStart - 1))) {
+            leftStart--;
+        }
+        TwoDimensional.Position end = area.offsetToPosition(change.getInsertionEnd(), TwoDimensional.Bias.Forward);
+        String right = area.getParagraph(end.getMajor()).getText();
+        int rightStart = end.getMinor();
+        int rightEnd = rightStart;
+        while (rightEnd < right.length() && !isSpace(right.charAt(rightEnd))) {
+            rightEnd++;
+        }
+        if (change.getInsertionEnd() + (rightEnd - rightStart) >= limit) {
+            return false;
+        }
+        words += countWords(left, leftStart, leftEnd, inserted, right, rightStart, rightEnd)
+                - countWords(left, leftStart, leftEnd, removed, right, rightStart, rightEnd);
+        return true;
+    }
+
+    public Counts selection() {
+        IndexRange range = area.getSelection();
+        if (range.getLength() == 0) {
+            return new Counts(0, 0, 0);
+        }
+        TwoDimensional.Position start = area.offsetToPosition(range.getStart(), TwoDimensional.Bias.Forward);
+        TwoDimensional.Position end = area.offsetToPosition(range.getEnd(), TwoDimensional.Bias.Forward);
+        WordCounter counter = new WordCounter();
+        for (int par = start.getMajor(); par <= end.getMajor(); par++) {
+            String text = area.getParagraph(par).getText();
+            int from = par == start.getMajor() ? start.getMinor() : 0;
+            int to = par == end.getMajor() ? end.getMinor() : text.length();
+            counter.feed(text, from, to);
+            counter.feedBreak();
+        }
+        return new Counts(end.getMajor() - start.getMajor() + 1, counter.count, range.getLength());
+    }
+
+    private static int countWords(String left, int leftStart, int leftEnd, String middle,
+                                  String right, int rightStart, int rightEnd) {
+        WordCounter counter = new WordCounter();
+        counter.feed(left, leftStart, leftEnd);
+        counter.feed(middle, 0, middle.length());
+        counter.feed(right, rightStart, rightEnd);
+        return counter.count;
+    }
+
+    private static int countBreaks(String text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean isSpace(char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\u000B' || ch == '\f' || ch == '\r';
+    }
+
+    public record Counts(int lines, int words, int characters) {
+    }
+
+    private static final class WordCounter {
+        int count;
+        boolean inWord;
+
+        void feed(String text, int from, int to) {
+            for (int i = from; i < to; i++) {
+                boolean space = isSpace(text.charAt(i));
+                if (!space && !inWord) {
+                    count++;
+                }
+                inWord = !space;
+            }
+        }
+
+        void feedBreak() {
+            inWord = false;
+        }
+    }
+}
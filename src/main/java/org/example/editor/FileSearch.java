@@ -0,0 +1,457 @@
+package org.example.editor;
+
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.util.Duration;
+import org.example.io.ByteSource;
+import org.example.io.CharsetDetector;
+import org.example.io.FileByteSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Find in files: one virtual thread walks the folder tree and every file is scanned on its own
+// virtual thread, at most PARALLELISM at a time. Files are decoded in fixed-size chunks read with
+// positional reads and searched a block of whole lines at a time, so memory use does not depend
+// on file sizes or on how many files the tree holds. Hits are handed to the
+// listener in batches on the FX thread while the walk is still going.
+public final class FileSearch {
+
+    public static final int MAX_HITS = 50_000;
+
+    private static final int MAX_FILE_HITS = 1000;
+    private static final int PARALLELISM = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private static final int CHUNK_BYTES = CharsetDetector.SAMPLE_BYTES;
+    private static final int BLOCK_CHARS = 64 * 1024;
+    private static final int MAX_LINE_CHARS = 64 * 1024;
+    private static final int REGEX_OVERLAP = 4096;
+    private static final int PREVIEW_BEFORE = 40;
+    private static final int MAX_PREVIEW = 200;
+    private static final Set<String> SKIPPED_DIRS = Set.of("node_modules");
+
+    private final FindQuery query;
+    private final Function<CharsetDetector.Detection, Charset> charsets;
+    private final Listener listener;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("file-search-", 0).factory());
+    private final Semaphore permits = new Semaphore(PARALLELISM);
+    private final ConcurrentLinkedQueue<Hit> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger files = new AtomicInteger();
+    private final AtomicInteger matchedFiles = new AtomicInteger();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final Timeline progress;
+    private final long startNanos = System.nanoTime();
+    private volatile boolean cancelled;
+    private volatile boolean truncated;
+    private volatile boolean done;
+    private volatile int candidateCount = -1;
+    private long elapsedMillis;
+    private Thread walker;
+
+    // `charsets` turns a detection into the charset the editor would open the file with.
+    public FileSearch(FindQuery query, Function<CharsetDetector.Detection, Charset> charsets, Listener listener) {
+        this.query = query;
+        this.charsets = charsets;
+        this.listener = listener;
+        progress = new Timeline(new KeyFrame(Duration.millis(100), event -> publish()));
+        progress.setCycleCount(Timeline.INDEFINITE);
+    }
+
+    // `filter` is a comma- or semicolon-separated list of file name globs, empty for every file.
+    // `candidates`, when given, is asked on the walker thread for the files worth scanning; when it
+    // returns null the whole tree is walked. Throws IllegalArgumentException for an invalid glob.
+    public void start(Path root, String filter, Supplier<Collection<Path>> candidates) {
+        List<PathMatcher> matchers = globs(filter);
+        progress.play();
+        walker = Thread.ofVirtual().name("file-search-walker").start(() -> {
+            try {
+                Collection<Path> files = candidates == null ? null : candidates.get();
+                if (files != null) {
+                    candidateCount = files.size();
+                    for (Path file : files) {
+                        if (cancelled) {
+                            break;
+                        }
+                        if (accepts(matchers, file)) {
+                            submit(file);
+                        }
+                    }
+                } else {
+                    walk(root, matchers);
+                }
+            } catch (IOException | SecurityException ignored) {
+            } finally {
+                permits.acquireUninterruptibly(PARALLELISM);
+                executor.shutdown();
+                elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+                done = true;
+                Platform.runLater(this::publish);
+            }
+        });
+    }
+
+    public void cancel() {
+        cancelled = true;
+        executor.shutdownNow();
+        if (walker != null) {
+            walker.interrupt();
+        }
+    }
+
+    private void walk(Path root, List<PathMatcher> matchers) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (cancelled) {
+                    return FileVisitResult.TERMINATE;
+                }
+                return !dir.equals(root) && isSkipped(dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (cancelled) {
+                    return FileVisitResult.TERMINATE;
+                }
+                if (attrs.isRegularFile() && attrs.size() > 0 && accepts(matchers, file)) {
+                    submit(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    // Hidden folders such as .git, and dependency folders, are never searched.
+    static boolean isSkipped(Path dir) {
+        Path name = dir.getFileName();
+        return name != null && (name.toString().startsWith(".") || SKIPPED_DIRS.contains(name.toString()));
+    }
+
+    private void submit(Path file) {
+        permits.acquireUninterruptibly();
+        try {
+            executor.execute(() -> {
+                try {
+                    scanFile(file);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            permits.release();
+        }
+    }
+
+    private void scanFile(Path file) {
+        if (cancelled) {
+            return;
+        }
+        LineScanner lines = new LineScanner(file);
+        try {
+            if (decode(file, charsets, () -> cancelled || lines.stopped, lines::feed)) {
+                lines.finish();
+            }
+            files.incrementAndGet();
+        } catch (IOException | CancellationException | InterruptibleCharSequence.BudgetExceededException ignored) {
+        }
+    }
+
+    // Decodes `file` chunk by chunk with the charset the editor would open it with and hands each
+    // chunk to `sink`, until `stop` says otherwise. Returns false for a binary file, which is not
+    // decoded at all. Files are read with positional reads, never mapped: a sequential read gains
+    // little from a mapping, and on Windows a mapping keeps the file locked until it is collected.
+    static boolean decode(Path file, Function<CharsetDetector.Detection, Charset> charsets, BooleanSupplier stop,
+                          Consumer<CharBuffer> sink) throws IOException {
+        try (ByteSource source = new FileByteSource(file)) {
+            long size = source.size();
+            ByteBuffer bytes = ByteBuffer.allocate(CHUNK_BYTES);
+            long position = fill(source, 0, bytes, size);
+            bytes.flip();
+            CharsetDetector.Detection detection = CharsetDetector.detect(bytes.array(), bytes.limit(), position < size);
+            if (isBinary(bytes, detection.kind())) {
+                return false;
+            }
+            bytes.position(Math.min(bytes.limit(), bomLength(detection.kind())));
+            CharsetDecoder decoder = charsets.apply(detection).newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            CharBuffer chars = CharBuffer.allocate(CHUNK_BYTES);
+            boolean eof = position >= size;
+            while (!stop.getAsBoolean()) {
+                CoderResult result = decoder.decode(bytes, chars, eof);
+                sink.accept(chars.flip());
+                chars.clear();
+                if (result.isOverflow()) {
+                    continue;
+                }
+                if (eof) {
+                    decoder.flush(chars);
+                    sink.accept(chars.flip());
+                    break;
+                }
+                bytes.compact();
+                long read = fill(source, position, bytes, size);
+                eof = read == 0 || position + read >= size;
+                position += read;
+                bytes.flip();
+            }
+            return true;
+        }
+    }
+
+    private static long fill(ByteSource source, long position, ByteBuffer bytes, long size) throws IOException {
+        long start = position;
+        while (bytes.hasRemaining() && position < size) {
+            int n = source.read(position, bytes);
+            if (n <= 0) {
+                break;
+            }
+            position += n;
+        }
+        return position - start;
+    }
+
+    // Same rule the detector applies: NULs in 8-bit text mean binary, UTF-16 is full of them.
+    private static boolean isBinary(ByteBuffer sample, CharsetDetector.Kind kind) {
+        if (kind == CharsetDetector.Kind.UTF16_LE || kind == CharsetDetector.Kind.UTF16_BE
+                || kind == CharsetDetector.Kind.UTF16_LE_BOM || kind == CharsetDetector.Kind.UTF16_BE_BOM) {
+            return false;
+        }
+        for (int i = sample.position(); i < sample.limit(); i++) {
+            if (sample.get(i) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int bomLength(CharsetDetector.Kind kind) {
+        return switch (kind) {
+            case UTF8_BOM -> 3;
+            case UTF16_LE_BOM, UTF16_BE_BOM -> 2;
+            default -> 0;
+        };
+    }
+
+    private static List<PathMatcher> globs(String filter) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        if (filter != null) {
+            for (String glob : filter.split("[,;]")) {
+                if (!glob.isBlank()) {
+                    matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + glob.trim()));
+                }
+            }
+        }
+        return matchers;
+    }
+
+    private static boolean accepts(List<PathMatcher> matchers, Path file) {
+        if (matchers.isEmpty()) {
+            return true;
+        }
+        Path name = file.getFileName();
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean addHit(Hit hit) {
+        if (hits.incrementAndGet() > MAX_HITS) {
+            truncated = true;
+            cancelled = true;
+            return false;
+        }
+        pending.add(hit);
+        return true;
+    }
+
+    private void publish() {
+        if (done) {
+            progress.stop();
+        }
+        List<Hit> batch = new ArrayList<>();
+        Hit hit;
+        while ((hit = pending.poll()) != null) {
+            batch.add(hit);
+        }
+        long millis = done ? elapsedMillis : (System.nanoTime() - startNanos) / 1_000_000;
+        listener.update(this, batch, new Progress(files.get(), matchedFiles.get(), Math.min(hits.get(), MAX_HITS),
+                candidateCount, done, truncated, cancelled && !truncated, millis));
+    }
+
+    // Splits decoded text into lines (LF, CRLF or CR, like the editor) and searches them a block
+    // at a time. The block keeps its line breaks so anchors and whole-word checks behave as they
+    // do in the editor. A line longer than MAX_LINE_CHARS is searched in pieces that overlap by
+    // the query length, or by REGEX_OVERLAP for regular expressions.
+    private final class LineScanner {
+        final Path file;
+        final StringBuilder block = new StringBuilder();
+        final IntList lineStarts = new IntList();
+        final IntList starts = new IntList();
+        final IntList ends = new IntList();
+        final int overlap;
+        long firstLine;
+        int firstColumn;
+        int scanFrom;
+        int fileHits;
+        boolean afterCr;
+        boolean stopped;
+
+        LineScanner(Path file) {
+            this.file = file;
+            this.overlap = Math.min(MAX_LINE_CHARS / 2, query.isRegex() ? REGEX_OVERLAP : query.length() + query.reach());
+            lineStarts.add(0);
+        }
+
+        void feed(CharBuffer chars) {
+            char[] array = chars.array();
+            int end = chars.arrayOffset() + chars.limit();
+            int i = chars.arrayOffset() + chars.position();
+            while (i < end && !stopped) {
+                char ch = array[i];
+                if (ch == '\n' || ch == '\r') {
+                    if (!(ch == '\n' && afterCr)) {
+                        endLine();
+                    }
+                    afterCr = ch == '\r';
+                    i++;
+                    continue;
+                }
+                afterCr = false;
+                int run = i;
+                int lineRoom = MAX_LINE_CHARS - (block.length() - lineStarts.get(lineStarts.size() - 1));
+                int stop = Math.min(end, i + lineRoom);
+                while (run < stop && array[run] != '\n' && array[run] != '\r') {
+                    run++;
+                }
+                block.append(array, i, run - i);
+                i = run;
+                if (block.length() - lineStarts.get(lineStarts.size() - 1) >= MAX_LINE_CHARS) {
+                    flush(true);
+                }
+            }
+        }
+
+        void endLine() {
+            block.append('\n');
+            if (block.length() >= BLOCK_CHARS) {
+                flush(false);
+            } else {
+                lineStarts.add(block.length());
+            }
+        }
+
+        void finish() {
+            if (!stopped && block.length() > scanFrom) {
+                flush(false);
+            }
+        }
+
+        // Matches starting in the last `overlap` characters of a partial line are left for the
+        // next piece, which still holds them in full; it resumes after the last match reported
+        // here so the two never overlap.
+        void flush(boolean partial) {
+            if (cancelled || Thread.currentThread().isInterrupted()) {
+                throw new CancellationException();
+            }
+            int length = block.length();
+            int limit = partial ? length - overlap : length;
+            int resume = limit;
+            starts.clear();
+            ends.clear();
+            query.scan(block, scanFrom, length, 0, starts, ends, true);
+            int line = 0;
+            for (int k = 0; k < starts.size() && starts.get(k) < limit; k++) {
+                int start = starts.get(k);
+                while (line + 1 < lineStarts.size() && lineStarts.get(line + 1) <= start) {
+                    line++;
+                }
+                int lineStart = lineStarts.get(line);
+                int lineEnd = line + 1 < lineStarts.size() ? lineStarts.get(line + 1) - 1
+                        : length > 0 && block.charAt(length - 1) == '\n' ? length - 1 : length;
+                resume = Math.max(resume, ends.get(k));
+                int end = Math.max(start, Math.min(ends.get(k), lineEnd));
+                int column = (line == 0 ? firstColumn : 0) + start - lineStart;
+                if (fileHits++ == 0) {
+                    matchedFiles.incrementAndGet();
+                }
+                if (!addHit(new Hit(file, firstLine + line, column, end - start, preview(lineStart, lineEnd, start)))
+                        || fileHits >= MAX_FILE_HITS) {
+                    stopped = true;
+                    return;
+                }
+            }
+            int last = lineStarts.size() - 1;
+            if (partial) {
+                // One character before the kept text stays as context for whole-word checks.
+                int cut = Math.max(lineStarts.get(last), limit - 1);
+                firstColumn = (last == 0 ? firstColumn : 0) + cut - lineStarts.get(last);
+                firstLine += last;
+                scanFrom = resume - cut;
+                block.delete(0, cut);
+            } else {
+                firstLine += lineStarts.size();
+                firstColumn = 0;
+                scanFrom = 0;
+                block.setLength(0);
+            }
+            lineStarts.clear();
+            lineStarts.add(0);
+        }
+
+        String preview(int lineStart, int lineEnd, int start) {
+            int from = Math.max(lineStart, start - PREVIEW_BEFORE);
+            int to = Math.min(lineEnd, from + MAX_PREVIEW);
+            return block.substring(from, to).strip();
+        }
+    }
+
+    // `line` and `column` are zero-based; `length` is cut off at the end of the line.
+    public record Hit(Path file, long line, int column, int length, String preview) {
+    }
+
+    // `candidates` is how many files an index picked out, or -1 when the tree was walked.
+    public record Progress(int files, int matchedFiles, int hits, int candidates, boolean done, boolean truncated,
+                           boolean cancelled, long elapsedMillis) {
+    }
+
+    public interface Listener {
+        void update(FileSearch search, List<Hit> hits, Progress progress);
+    }
+}
@@ -0,0 +1,442 @@
+package org.example.editor;
+
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.util.Duration;
+import org.fxmisc.richtext.CodeArea;
+import org.fxmisc.richtext.MultiChangeBuilder;
+import org.fxmisc.richtext.Selection;
+import org.fxmisc.richtext.SelectionImpl;
+import org.fxmisc.richtext.model.PlainTextChange;
+import org.fxmisc.richtext.model.TwoDimensional;
+import org.reactfx.EventStreams;
+import org.reactfx.Subscription;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Every match of the find query in one editor, as sorted start and end offsets. Literal queries on
+// small documents are scanned inline; large documents and regular expressions go to a background
+// thread, where a regex that runs past its time budget is abandoned. For literal queries each
+// edit only rescans the changed text plus query-length margins and shifts the offsets after it;
+// a regex that stays within lines rescans the edited lines. Anything else is searched again once
+// typing pauses. Matches in the viewport are drawn as extra RichTextFX selections with the
+// find-match style class.
+public class FindIndex {
+
+    private static final int INLINE_SCAN_CHARS = 256 * 1024;
+    private static final int MAX_INLINE_RESCAN = 256 * 1024;
+    private static final int MAX_OVERLAYS = 400;
+    private static final Duration REBUILD_DELAY = Duration.millis(200);
+    private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "find-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final CodeArea area;
+    private final List<Selection<Collection<String>, String, Collection<String>>> overlays = new ArrayList<>();
+    private FindQuery query;
+    private IntList starts = new IntList();
+    private IntList ends = new IntList();
+    private boolean ready = true;
+    private String error;
+    private Runnable listener = () -> {
+    };
+    private Subscription subscription;
+    private boolean overlayScheduled;
+    private long version;
+    private Future<?> inFlight;
+    private final Timeline pendingRebuild;
+
+    public FindIndex(CodeArea area) {
+        this.area = area;
+        this.pendingRebuild = new Timeline(new KeyFrame(REBUILD_DELAY, event -> {
+            if (query != null) {
+                rebuild();
+            }
+        }));
+    }
+
+    public void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+
+    public void setQuery(FindQuery query) {
+        if (query == null || query.isEmpty()) {
+            if (this.query != null) {
+                clear();
+            }
+            return;
+        }
+        if (query.equals(this.query)) {
+            return;
+        }
+        this.query = query;
+        if (subscription == null) {
+            subscription = area.multiPlainChanges().subscribe(this::onChanges)
+                    .and(EventStreams.invalidationsOf(area.getVisibleParagraphs()).subscribe(ignore -> scheduleOverlays()));
+        }
+        rebuild();
+    }
+
+    public void clear() {
+        cancel();
+        query = null;
+        starts = new IntList();
+        ends = new IntList();
+        ready = true;
+        error = null;
+        if (subscription != null) {
+            subscription.unsubscribe();
+            subscription = null;
+        }
+        removeOverlays(0);
+        listener.run();
+    }
+
+    public FindQuery query() {
+        return query;
+    }
+
+    public boolean isActive() {
+        return query != null;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // Set when the last search was abandoned, e.g. because a regex ran out of time.
+    public String error() {
+        return error;
+    }
+
+    public int count() {
+        return starts.size();
+    }
+
+    public int start(int index) {
+        return starts.get(index);
+    }
+
+    public int end(int index) {
+        return ends.get(index);
+    }
+
+    // Index of the first match starting at or after `offset`; count() when there is none.
+    public int lowerBound(int offset) {
+        int lo = 0;
+        int hi = starts.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts.get(mid) < offset) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    public int indexOf(int start, int end) {
+        int index = lowerBound(start);
+        return index < starts.size() && starts.get(index) == start && ends.get(index) == end ? index : -1;
+    }
+
+    private void rebuild() {
+        cancel();
+        String text = area.getText();
+        FindQuery job = query;
+        if (!job.isRegex() && text.length() <= INLINE_SCAN_CHARS) {
+            IntList foundStarts = new IntList();
+            IntList foundEnds = new IntList();
+            job.scan(text, 0, text.length(), 0, foundStarts, foundEnds, false);
+            finish(foundStarts, foundEnds, null);
+            return;
+        }
+        ready = false;
+        listener.run();
+        long jobVersion = version;
+        inFlight = WORKER.submit(() -> {
+            IntList foundStarts = new IntList(1024);
+            IntList foundEnds = new IntList(1024);
+            String failure = null;
+            try {
+                job.scan(text, 0, text.length(), 0, foundStarts, foundEnds, true);
+            } catch (CancellationException ex) {
+                return;
+            } catch (InterruptibleCharSequence.BudgetExceededException ex) {
+                failure = "A busca excedeu " + FindQuery.TIME_BUDGET_MILLIS + " ms e foi interrompida.";
+            } catch (StackOverflowError ex) {
+                failure = "A expressão é complexa demais para este texto.";
+            }
+            String message = failure;
+            Platform.runLater(() -> {
+                if (jobVersion == version) {
+                    inFlight = null;
+                    if (message != null) {
+                        finish(new IntList(), new IntList(), message);
+                    } else {
+                        finish(foundStarts, foundEnds, null);
+                    }
+                }
+            });
+        });
+    }
+
+    // Replaces every match as one multi-change in ascending order, so the undo history gets a
+    // single entry and only the replaced ranges lose their styles. The caret, selection and top
+    // visible line follow the text they were on. Returns how many matches were replaced.
+    public int replaceAll(String replacement) {
+        if (query == null || !ready || starts.size() == 0) {
+            return 0;
+        }
+        // Copied: committing the batch below splices `starts` and `ends`.
+        IntList matchStarts = new IntList(starts.size());
+        IntList matchEnds = new IntList(starts.size());
+        for (int i = 0; i < starts.size(); i++) {
+            matchStarts.add(starts.get(i));
+            matchEnds.add(ends.get(i));
+        }
+        String[] replacements = query.expandAll(area.getText(), matchStarts, matchEnds, replacement);
+        int top;
+        try {
+            top = area.getAbsolutePosition(area.firstVisibleParToAllParIndex(), 0);
+        } catch (IllegalArgumentException | IllegalStateException ex) {
+            top = -1;
+        }
+        int caret = area.getCaretPosition();
+        int anchor = area.getAnchor();
+        MultiChangeBuilder<Collection<String>, String, Collection<String>> batch = area.createMultiChange(matchStarts.size());
+        int[] newLengths = new int[matchStarts.size()];
+        int count = 0;
+        for (int i = 0; i < matchStarts.size(); i++) {
+            String text = replacements[i];
+            int oldLength = matchEnds.get(i) - matchStarts.get(i);
+            newLengths[i] = text == null ? oldLength : text.length();
+            if (text != null) {
+                batch.replaceText(matchStarts.get(i), matchEnds.get(i), text);
+                count++;
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+        batch.commit();
+        int newAnchor = mapOffset(anchor, matchStarts, matchEnds, newLengths);
+        int newCaret = mapOffset(caret, matchStarts, matchEnds, newLengths);
+        area.selectRange(newAnchor, newCaret);
+        if (top >= 0) {
+            area.showParagraphAtTop(area.offsetToPosition(mapOffset(top, matchStarts, matchEnds, newLengths),
+                    TwoDimensional.Bias.Forward).getMajor());
+        }
+        return count;
+    }
+
+    // Where an offset ends up after the replacements; inside a replaced range it moves to its start.
+    private static int mapOffset(int offset, IntList starts, IntList ends, int[] newLengths) {
+        int delta = 0;
+        for (int i = 0; i < starts.size(); i++) {
+            if (ends.get(i) <= offset) {
+                delta += newLengths[i] - (ends.get(i) - starts.get(i));
+            } else {
+                if (starts.get(i) < offset) {
+                    return starts.get(i) + delta;
+                }
+                break;
+            }
+        }
+        return offset + delta;
+    }
+
+    private void finish(IntList foundStarts, IntList foundEnds, String failure) {
+        starts = foundStarts;
+        ends = foundEnds;
+        error = failure;
+        ready = true;
+        listener.run();
+        scheduleOverlays();
+    }
+
+    private void cancel() {
+        pendingRebuild.stop();
+        version++;
+        if (inFlight != null) {
+            inFlight.cancel(true);
+            inFlight = null;
+        }
+    }
+
+    // Ascending changes are treated as one replaced region from the first change's position to
+    // the last one's end; anything else, a region too large to rescan inline or a query that can
+    // match across lines starts over.
+    private void onChanges(List<PlainTextChange> changes) {
+        if (query == null || changes.isEmpty()) {
+            return;
+        }
+        if (!ready || !(query.isLocal() || query.isLineLocal())) {
+            scheduleRebuild();
+            return;
+        }
+        int delta = 0;
+        for (int i = 0; i < changes.size(); i++) {
+            PlainTextChange change = changes.get(i);
+            if (i > 0 && change.getPosition() < changes.get(i - 1).getInsertionEnd()) {
+                scheduleRebuild();
+                return;
+            }
+            delta += change.getNetLength();
+        }
+        PlainTextChange last = changes.get(changes.size() - 1);
+        int from = changes.get(0).getPosition();
+        int newTo = last.getInsertionEnd();
+        int oldTo = newTo - delta;
+        boolean spliced;
+        try {
+            spliced = query.isLocal() ? spliceLiteral(from, oldTo, newTo) : spliceLines(from, oldTo, newTo);
+        } catch (CancellationException | InterruptibleCharSequence.BudgetExceededException | StackOverflowError ex) {
+            spliced = false;
+        }
+        if (!spliced) {
+            scheduleRebuild();
+            return;
+        }
+        listener.run();
+        scheduleOverlays();
+    }
+
+    // Typing pauses before a full search: every keystroke would otherwise copy and rescan the
+    // whole document.
+    private void scheduleRebuild() {
+        cancel();
+        if (ready) {
+            ready = false;
+            listener.run();
+        }
+        pendingRebuild.playFromStart();
+    }
+
+    // Drops matches that overlapped [from, oldTo) or, for whole words, touched it, shifts the ones
+    // after it and rescans the new text together with the query-length margins on both sides. The
+    // window is read with `reach` extra characters of context for the whole-word checks.
+    private boolean spliceLiteral(int from, int oldTo, int newTo) {
+        if (newTo - from > MAX_INLINE_RESCAN) {
+            return false;
+        }
+        int m = query.length();
+        int reach = query.reach();
+        int windowFrom = Math.max(0, from - m + 1 - reach);
+        int windowTo = Math.min(area.getLength(), newTo + m - 1 + reach);
+        splice(lowerBound(from - m + 1 - reach), lowerBound(oldTo + reach), newTo - oldTo, windowFrom, windowTo, m);
+        return true;
+    }
+
+    // Every match of a line-local regex lies within one line and depends on that line alone, so
+    // the lines the edit touched are searched again, with the line breaks around them as context
+    // for anchors and lookarounds, and the matches after them are shifted.
+    private boolean spliceLines(int from, int oldTo, int newTo) {
+        int firstLine = area.offsetToPosition(from, TwoDimensional.Bias.Forward).getMajor();
+        int lastLine = area.offsetToPosition(newTo, TwoDimensional.Bias.Forward).getMajor();
+        int windowFrom = area.getAbsolutePosition(firstLine, 0);
+        int windowTo = area.getAbsolutePosition(lastLine, area.getParagraphLength(lastLine));
+        if (windowTo - windowFrom > MAX_INLINE_RESCAN) {
+            return false;
+        }
+        int delta = newTo - oldTo;
+        splice(lowerBound(windowFrom), lowerBound(windowTo - delta), delta, windowFrom, windowTo, 1);
+        return true;
+    }
+
+    // Replaces the matches in [lo, hi) with those found in [windowFrom, windowTo) of the edited
+    // text and shifts the ones from `hi` on by `delta`. The window is searched before anything
+    // changes, so a regex that gives up leaves the matches as they were.
+    private void splice(int lo, int hi, int delta, int windowFrom, int windowTo, int minLength) {
+        int length = area.getLength();
+        IntList foundStarts = new IntList();
+        IntList foundEnds = new IntList();
+        if (windowTo - windowFrom >= minLength) {
+            int reach = Math.max(1, query.reach());
+            int contextFrom = Math.max(0, windowFrom - reach);
+            int contextTo = Math.min(length, windowTo + reach);
+            query.scan(area.getText(contextFrom, contextTo), windowFrom - contextFrom, windowTo - contextFrom,
+                    contextFrom, foundStarts, foundEnds, query.isRegex());
+        }
+        for (int i = hi; i < starts.size(); i++) {
+            starts.set(i, starts.get(i) + delta);
+            ends.set(i, ends.get(i) + delta);
+        }
+        starts.replace(lo, hi - lo, foundStarts.size(), 0);
+        ends.replace(lo, hi - lo, foundEnds.size(), 0);
+        for (int i = 0; i < foundStarts.size(); i++) {
+            starts.set(lo + i, foundStarts.get(i));
+            ends.set(lo + i, foundEnds.get(i));
+        }
+    }
+
+    private void scheduleOverlays() {
+        if (overlayScheduled) {
+            return;
+        }
+        overlayScheduled = true;
+        Platform.runLater(() -> {
+            overlayScheduled = false;
+            paintOverlays();
+        });
+    }
+
+    private void paintOverlays() {
+        if (!ready || query == null || starts.size() == 0) {
+            removeOverlays(0);
+            return;
+        }
+        int first;
+        int last;
+        try {
+            first = area.firstVisibleParToAllParIndex();
+            last = area.lastVisibleParToAllParIndex();
+        } catch (IllegalArgumentException | IllegalStateException ex) {
+            first = area.getCurrentParagraph();
+            last = first;
+        }
+        int from = area.getAbsolutePosition(first, 0);
+        int to = area.getAbsolutePosition(last, area.getParagraphLength(last));
+        int used = 0;
+        for (int i = Math.max(0, lowerBound(from) - 1); i < starts.size() && used < MAX_OVERLAYS; i++) {
+            int start = starts.get(i);
+            int end = ends.get(i);
+            if (start >= to) {
+                break;
+            }
+            if (end <= from) {
+                continue;
+            }
+            Selection<Collection<String>, String, Collection<String>> overlay;
+            if (used < overlays.size()) {
+                overlay = overlays.get(used);
+            } else {
+                overlay = new SelectionImpl<>("find-match-" + used, area,
+                        path -> path.getStyleClass().add("find-match"));
+                area.addSelection(overlay);
+                overlays.add(overlay);
+            }
+            overlay.selectRange(start, end);
+            used++;
+        }
+        removeOverlays(used);
+    }
+
+    private void removeOverlays(int keep) {
+        for (int i = overlays.size() - 1; i >= keep; i--) {
+            Selection<Collection<String>, String, Collection<String>> overlay = overlays.remove(i);
+            area.removeSelection(overlay);
+            overlay.dispose();
+        }
+    }
+}
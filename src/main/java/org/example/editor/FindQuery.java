@@ -0,0 +1,398 @@
+package org.example.editor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// What the find dialog searches for. Literal queries, with or without case and whole-word
+// matching, only ever match their own length, so they are found with Boyer-Moore-Horspool and can
+// be maintained incrementally; regular expressions run through java.util.regex on text that
+// enforces a time budget.
+public final class FindQuery {
+
+    public static final long TIME_BUDGET_MILLIS = Long.getLong("codepad.findBudgetMillis", 2000L);
+
+    private static final int CHECK_INTERVAL = 1 << 16;
+    private static final String WORD_BEFORE = "(?<![\\p{L}\\p{N}_])";
+    private static final String WORD_AFTER = "(?![\\p{L}\\p{N}_])";
+    // Escapes, negated classes and dotall flags that can match a line break, refer to the whole
+    // input or name a character by code; a line break typed into the pattern counts too.
+    private static final Pattern LINE_SPANNING = Pattern.compile(
+            "\\\\[sWDRvVhHpPxuc0NXAzZGQ]|\\[\\^|\\(\\?[a-zA-Z]*s|[\\n\\r]");
+
+    private final String text;
+    private final boolean regex;
+    private final boolean matchCase;
+    private final boolean wholeWord;
+    private final Pattern pattern;
+    private final boolean selfOverlapping;
+    private final boolean lineLocal;
+
+    // Throws PatternSyntaxException for an invalid regular expression.
+    public FindQuery(String text, boolean regex, boolean matchCase, boolean wholeWord) {
+        this.text = text;
+        this.regex = regex;
+        this.matchCase = matchCase;
+        this.wholeWord = wholeWord;
+        int flags = Pattern.MULTILINE | (regex ? 0 : Pattern.LITERAL)
+                | (matchCase ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        Pattern compiled = Pattern.compile(text, flags);
+        if (wholeWord) {
+            String body = regex ? "(?:" + text + ")" : Pattern.quote(text);
+            compiled = Pattern.compile(WORD_BEFORE + body + WORD_AFTER, flags & ~Pattern.LITERAL);
+        }
+        this.pattern = compiled;
+        this.selfOverlapping = !regex && hasBorder(text);
+        this.lineLocal = regex && !LINE_SPANNING.matcher(text).find();
+    }
+
+    public String text() {
+        return text;
+    }
+
+    public boolean isRegex() {
+        return regex;
+    }
+
+    public boolean isEmpty() {
+        return text.isEmpty();
+    }
+
+    // Literal matches depend only on their own characters plus, for whole words, one neighbour on
+    // each side; regex matches can depend on anything. So can a literal that may overlap itself,
+    // as in "aa": which occurrences count depends on the ones before them.
+    public boolean isLocal() {
+        return !regex && !selfOverlapping;
+    }
+
+    // A regex none of whose parts can match a line break or see past the line it is on, judged
+    // conservatively from the pattern text: its matches on a line depend on that line alone.
+    public boolean isLineLocal() {
+        return lineLocal;
+    }
+
+    public int reach() {
+        return wholeWord ? 1 : 0;
+    }
+
+    public int length() {
+        return text.length();
+    }
+
+    // Runs of characters every match contains, used to narrow a search to the files that hold them
+    // all. Regular expressions only yield the literals outside groups that no quantifier makes
+    // optional; empty when nothing can be said, as for a pattern with alternatives.
+    public List<String> requiredLiterals() {
+        if (!regex) {
+            return List.of(text);
+        }
+        List<String> runs = new ArrayList<>();
+        StringBuilder run = new StringBuilder();
+        boolean literal = false;
+        int depth = 0;
+        int i = 0;
+        while (i < text.length()) {
+            char ch = text.charAt(i++);
+            boolean wasLiteral = literal;
+            literal = false;
+            switch (ch) {
+                case '|' -> {
+                    return List.of();
+                }
+                case '\\' -> {
+                    if (i == text.length()) {
+                        return List.of();
+                    }
+                    char next = text.charAt(i++);
+                    if (!Character.isLetterOrDigit(next)) {
+                        literal = depth == 0;
+                        if (literal) {
+                            run.append(next);
+                        }
+                    } else if ("xu0cpPkNQ".indexOf(next) >= 0) {
+                        // Escapes with arguments, and quoting, are not worth parsing here.
+                        return List.of();
+                    }
+                }
+                case '[' -> i = skipClass(text, i);
+                case '(' -> {
+                    depth++;
+                    if (i < text.length() && text.charAt(i) == '?') {
+                        int flags = i + 1;
+                        while (flags < text.length() && Character.isLetter(text.charAt(flags))) {
+                            if (text.charAt(flags++) == 'x') {
+                                return List.of();
+                            }
+                        }
+                    }
+                }
+                case ')' -> depth--;
+                case '?', '*', '{' -> {
+                    if (wasLiteral) {
+                        run.setLength(run.length() - 1);
+                    }
+                    if (ch == '{') {
+                        int close = text.indexOf('}', i);
+                        i = close < 0 ? text.length() : close + 1;
+                    }
+                    i = skipQuantifierSuffix(text, i);
+                }
+                case '+' -> i = skipQuantifierSuffix(text, i);
+                case '.', '^', '$' -> {
+                }
+                default -> {
+                    literal = depth == 0;
+                    if (literal) {
+                        run.append(ch);
+                    }
+                }
+            }
+            if (!literal && run.length() > 0) {
+                runs.add(run.toString());
+                run.setLength(0);
+            }
+        }
+        if (run.length() > 0) {
+            runs.add(run.toString());
+        }
+        return runs;
+    }
+
+    private static int skipClass(String pattern, int i) {
+        int depth = 1;
+        if (i < pattern.length() && pattern.charAt(i) == '^') {
+            i++;
+        }
+        if (i < pattern.length() && pattern.charAt(i) == ']') {
+            i++;
+        }
+        while (i < pattern.length() && depth > 0) {
+            char ch = pattern.charAt(i++);
+            if (ch == '\\') {
+                i++;
+            } else if (ch == '[') {
+                depth++;
+            } else if (ch == ']') {
+                depth--;
+            }
+        }
+        return i;
+    }
+
+    private static int skipQuantifierSuffix(String pattern, int i) {
+        return i < pattern.length() && (pattern.charAt(i) == '?' || pattern.charAt(i) == '+') ? i + 1 : i;
+    }
+
+    // Adds every match lying entirely within [from, to) to `starts`/`ends`, offset by `base`.
+    // Characters of `text` outside the range are only looked at for whole-word checks. Matches
+    // never overlap, the search resuming after each one, and empty regex matches are skipped.
+    public void scan(CharSequence text, int from, int to, int base, IntList starts, IntList ends,
+                     boolean interruptible) {
+        if (regex) {
+            CharSequence input = interruptible ? new InterruptibleCharSequence(text, deadline()) : text;
+            Matcher matcher = pattern.matcher(input);
+            matcher.region(from, to);
+            matcher.useTransparentBounds(true);
+            matcher.useAnchoringBounds(false);
+            while (matcher.find()) {
+                if (matcher.end() > matcher.start()) {
+                    starts.add(base + matcher.start());
+                    ends.add(base + matcher.end());
+                }
+            }
+            return;
+        }
+        scanLiteral(text, from, to, base, starts, ends, interruptible);
+    }
+
+    // Boyer-Moore-Horspool. The shift table is keyed on the low byte of each character and holds
+    // both case variants when case is ignored; colliding characters keep the smallest shift,
+    // which is always safe.
+    private void scanLiteral(CharSequence text, int from, int to, int base, IntList starts, IntList ends,
+                             boolean interruptible) {
+        int m = this.text.length();
+        if (m == 0 || to - from < m) {
+            return;
+        }
+        char[] needle = new char[m];
+        for (int i = 0; i < m; i++) {
+            needle[i] = fold(this.text.charAt(i));
+        }
+        int[] shift = new int[256];
+        Arrays.fill(shift, m);
+        for (int i = 0; i < m - 1; i++) {
+            char ch = this.text.charAt(i);
+            shift[ch & 0xFF] = m - 1 - i;
+            if (!matchCase) {
+                shift[needle[i] & 0xFF] = m - 1 - i;
+                shift[Character.toLowerCase(ch) & 0xFF] = m - 1 - i;
+                shift[Character.toUpperCase(ch) & 0xFF] = m - 1 - i;
+            }
+        }
+        char last = needle[m - 1];
+        int nextCheck = from + CHECK_INTERVAL;
+        int i = from;
+        int limit = to - m;
+        while (i <= limit) {
+            char ch = text.charAt(i + m - 1);
+            if (fold(ch) == last) {
+                int j = m - 2;
+                while (j >= 0 && fold(text.charAt(i + j)) == needle[j]) {
+                    j--;
+                }
+                if (j < 0 && (!wholeWord || isWordBoundary(text, i, i + m))) {
+                    starts.add(base + i);
+                    ends.add(base + i + m);
+                    i += m;
+                    continue;
+                }
+            }
+            i += matchCase ? shift[ch & 0xFF] : Math.min(shift[ch & 0xFF], shift[fold(ch) & 0xFF]);
+            if (interruptible && i >= nextCheck) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new CancellationException();
+                }
+                nextCheck = i + CHECK_INTERVAL;
+            }
+        }
+    }
+
+    // The replacement for the match at [start, end) of `text`: `$n`, `${name}` and backslash
+    // escapes are expanded for regular expressions, literal queries use it as typed. Returns null
+    // when the range is no longer a match.
+    public String expand(String text, int start, int end, String replacement) {
+        if (!regex) {
+            return replacement;
+        }
+        Matcher matcher = pattern.matcher(new InterruptibleCharSequence(text, deadline()));
+        matcher.region(start, text.length());
+        matcher.useTransparentBounds(true);
+        matcher.useAnchoringBounds(false);
+        if (!matcher.lookingAt() || matcher.end() != end) {
+            return null;
+        }
+        return expand(matcher, replacement);
+    }
+
+    // Replacement texts for a run of ascending, non-overlapping matches of `text`, sharing one
+    // time budget; an entry is null where the pattern no longer matches that exact range. Throws
+    // BudgetExceededException when that takes too long and IllegalArgumentException for a bad
+    // group reference.
+    public String[] expandAll(String text, IntList starts, IntList ends, String replacement) {
+        String[] result = new String[starts.size()];
+        if (!regex) {
+            Arrays.fill(result, replacement);
+            return result;
+        }
+        Matcher matcher = pattern.matcher(new InterruptibleCharSequence(text, deadline()));
+        matcher.useTransparentBounds(true);
+        matcher.useAnchoringBounds(false);
+        for (int i = 0; i < result.length; i++) {
+            matcher.region(starts.get(i), text.length());
+            if (matcher.lookingAt() && matcher.end() == ends.get(i)) {
+                result[i] = expand(matcher, replacement);
+            }
+        }
+        return result;
+    }
+
+    // Same syntax as Matcher.appendReplacement, without copying the text before the match.
+    static String expand(Matcher matcher, String replacement) {
+        StringBuilder out = new StringBuilder(replacement.length() + 16);
+        int i = 0;
+        while (i < replacement.length()) {
+            char ch = replacement.charAt(i++);
+            if (ch == '\\') {
+                if (i == replacement.length()) {
+                    throw new IllegalArgumentException("character to be escaped is missing");
+                }
+                out.append(replacement.charAt(i++));
+            } else if (ch == '$') {
+                if (i == replacement.length()) {
+                    throw new IllegalArgumentException("Illegal group reference: group index is missing");
+                }
+                String group;
+                if (replacement.charAt(i) == '{') {
+                    int close = replacement.indexOf('}', i);
+                    if (close < 0) {
+                        throw new IllegalArgumentException("named capturing group is missing trailing '}'");
+                    }
+                    group = matcher.group(replacement.substring(i + 1, close));
+                    i = close + 1;
+                } else {
+                    int number = replacement.charAt(i) - '0';
+                    if (number < 0 || number > 9) {
+                        throw new IllegalArgumentException("Illegal group reference");
+                    }
+                    i++;
+                    while (i < replacement.length()) {
+                        int digit = replacement.charAt(i) - '0';
+                        if (digit < 0 || digit > 9 || number * 10 + digit > matcher.groupCount()) {
+                            break;
+                        }
+                        number = number * 10 + digit;
+                        i++;
+                    }
+                    group = matcher.group(number);
+                }
+                if (group != null) {
+                    out.append(group);
+                }
+            } else {
+                out.append(ch);
+            }
+        }
+        return out.toString();
+    }
+
+    private static long deadline() {
+        return System.nanoTime() + TIME_BUDGET_MILLIS * 1_000_000L;
+    }
+
+    // Whether a proper prefix of the literal is also a suffix of it, compared as the scan does.
+    private boolean hasBorder(String literal) {
+        int m = literal.length();
+        for (int k = 1; k < m; k++) {
+            int j = 0;
+            while (j < m - k && fold(literal.charAt(j)) == fold(literal.charAt(k + j))) {
+                j++;
+            }
+            if (j == m - k) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private char fold(char ch) {
+        return matchCase ? ch : foldCase(ch);
+    }
+
+    static char foldCase(char ch) {
+        return Character.toLowerCase(Character.toUpperCase(ch));
+    }
+
+    private static boolean isWordBoundary(CharSequence text, int start, int end) {
+        return (start == 0 || !isWordChar(text.charAt(start - 1)))
+                && (end == text.length() || !isWordChar(text.charAt(end)));
+    }
+
+    private static boolean isWordChar(char ch) {
+        return Character.isLetterOrDigit(ch) || ch == '_';
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof FindQuery query && text.equals(query.text) && regex == query.regex
+                && matchCase == query.matchCase && wholeWord == query.wholeWord;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(text, regex, matchCase, wholeWord);
+    }
+}
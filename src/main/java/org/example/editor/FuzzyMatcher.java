@@ -0,0 +1,163 @@
+package org.example.editor;
+
+import java.util.Comparator;
+
+// Subsequence matching for completion: every pattern character has to appear in the candidate in
+// order, ignoring case. Matches at the start of a camel-case hump, after an underscore or at the
+// start of the word score highest, so "gCWR" ranks getCurrentWordRange above words that merely
+// contain those letters. Each candidate carries a 64-bit mask of the characters it contains,
+// which rejects most non-matches without looking at the text.
+public final class FuzzyMatcher {
+
+    public static final int NO_MATCH = Integer.MIN_VALUE;
+    public static final Comparator<Match> BY_SCORE = (a, b) -> a.score() != b.score()
+            ? Double.compare(b.score(), a.score())
+            : a.text().compareTo(b.text());
+
+    private static final int MATCH = 16;
+    private static final int BOUNDARY = 30;
+    private static final int START = 15;
+    private static final int CONSECUTIVE = 15;
+    private static final int PREFIX = 20;
+    private static final int EXACT_CASE = 1;
+    private static final int GAP = 1;
+    private static final int MAX_LEADING_GAP = 8;
+    private static final int UNMATCHED_PER_POINT = 4;
+
+    private final String pattern;
+    private final char[] lower;
+    private final long mask;
+    private int[] previous = new int[0];
+    private int[] current = new int[0];
+
+    public FuzzyMatcher(String pattern) {
+        this.pattern = pattern;
+        this.lower = new char[pattern.length()];
+        for (int i = 0; i < lower.length; i++) {
+            lower[i] = toLower(pattern.charAt(i));
+        }
+        this.mask = mask(pattern);
+    }
+
+    public String pattern() {
+        return pattern;
+    }
+
+    public boolean isEmpty() {
+        return lower.length == 0;
+    }
+
+    public boolean mayMatch(long candidateMask) {
+        return (mask & ~candidateMask) == 0;
+    }
+
+    public int score(String candidate) {
+        return score(candidate, mask(candidate));
+    }
+
+    // Best alignment over all ways of placing the pattern in the candidate, computed one pattern
+    // character at a time; `run` carries the best earlier placement minus the gap since it.
+    public int score(String candidate, long candidateMask) {
+        int m = lower.length;
+        int n = candidate.length();
+        if (m == 0) {
+            return 0;
+        }
+        if (m > n || !mayMatch(candidateMask)) {
+            return NO_MATCH;
+        }
+        if (previous.length < n) {
+            previous = new int[n];
+            current = new int[n];
+        }
+        for (int i = 0; i < m; i++) {
+            int run = NO_MATCH;
+            for (int j = 0; j < n; j++) {
+                if (i > 0 && j > 0) {
+                    int before = previous[j - 1];
+                    run = Math.max(run == NO_MATCH ? NO_MATCH : run - GAP, before);
+                }
+                char ch = candidate.charAt(j);
+                if (j < i || toLower(ch) != lower[i]) {
+                    current[j] = NO_MATCH;
+                    continue;
+                }
+                int base = MATCH + (ch == pattern.charAt(i) ? EXACT_CASE : 0);
+                if (isBoundary(candidate, j)) {
+                    base += BOUNDARY;
+                }
+                if (i == 0) {
+                    current[j] = base + (j == 0 ? START : -Math.min(j, MAX_LEADING_GAP));
+                    continue;
+                }
+                int best = run;
+                int adjacent = previous[j - 1];
+                if (adjacent != NO_MATCH) {
+                    best = Math.max(best, adjacent + CONSECUTIVE);
+                }
+                current[j] = best == NO_MATCH ? NO_MATCH : best + base;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        int best = NO_MATCH;
+        for (int j = m - 1; j < n; j++) {
+            best = Math.max(best, previous[j]);
+        }
+        if (best == NO_MATCH) {
+            return NO_MATCH;
+        }
+        if (candidate.regionMatches(true, 0, pattern, 0, m)) {
+            best += PREFIX;
+        }
+        // Shorter candidates win ties: "get" prefers getChars over getCurrentWordRange.
+        return best - (n - m) / UNMATCHED_PER_POINT;
+    }
+
+    // Bits 0-25 are letters regardless of case, 26-35 digits, 36 the underscore and the rest are
+    // shared by every other character.
+    public static long mask(CharSequence text) {
+        long mask = 0;
+        for (int i = 0; i < text.length(); i++) {
+            mask |= 1L << bit(text.charAt(i));
+        }
+        return mask;
+    }
+
+    private static int bit(char ch) {
+        char c = toLower(ch);
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a';
+        }
+        if (c >= '0' && c <= '9') {
+            return 26 + c - '0';
+        }
+        if (c == '_') {
+            return 36;
+        }
+        return 37 + c % 27;
+    }
+
+    private static boolean isBoundary(String text, int index) {
+        if (index == 0) {
+            return true;
+        }
+        char prev = text.charAt(index - 1);
+        char ch = text.charAt(index);
+        if (!Character.isLetterOrDigit(prev)) {
+            return true;
+        }
+        if (Character.isUpperCase(ch) && !Character.isUpperCase(prev)) {
+            return true;
+        }
+        return Character.isDigit(ch) != Character.isDigit(prev);
+    }
+
+    private static char toLower(char ch) {
+        return ch >= 'A' && ch <= 'Z' ? (char) (ch + ('a' - 'A')) : Character.toLowerCase(ch);
+    }
+
+    public record Match(String text, double score) {
+    }
+}
@@ -0,0 +1,88 @@
+package org.example.editor;
+
+import org.fxmisc.richtext.CodeArea;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// What is left of a tab's editor while it hibernates: the text deflated as UTF-8 plus the caret,
+// selection anchor and first visible paragraph. Undo history and style spans are dropped.
+public final class HibernatedEditor {
+
+    private final byte[] compressed;
+    private final int rawLength;
+    private final int chars;
+    private final int caret;
+    private final int anchor;
+    private final int firstVisibleParagraph;
+
+    private HibernatedEditor(byte[] compressed, int rawLength, int chars, int caret, int anchor,
+                             int firstVisibleParagraph) {
+        this.compressed = compressed;
+        this.rawLength = rawLength;
+        this.chars = chars;
+        this.caret = caret;
+        this.anchor = anchor;
+        this.firstVisibleParagraph = firstVisibleParagraph;
+    }
+
+    public static HibernatedEditor capture(CodeArea area) {
+        byte[] raw = area.getText().getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] chunk = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+        } finally {
+            deflater.end();
+        }
+        int firstVisible;
+        try {
+            firstVisible = area.firstVisibleParToAllParIndex();
+        } catch (IllegalArgumentException | IllegalStateException ex) {
+            firstVisible = area.getCurrentParagraph();
+        }
+        return new HibernatedEditor(out.toByteArray(), raw.length, area.getLength(),
+                area.getCaretPosition(), area.getAnchor(), firstVisible);
+    }
+
+    public String text() {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[rawLength];
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                length += inflater.inflate(raw, length, rawLength - length);
+            }
+            return new String(raw, 0, length, StandardCharsets.UTF_8);
+        } catch (DataFormatException ex) {
+            throw new IllegalStateException(ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    public void restore(CodeArea area) {
+        int length = area.getLength();
+        area.selectRange(Math.min(anchor, length), Math.min(caret, length));
+        if (firstVisibleParagraph > 0 && firstVisibleParagraph < area.getParagraphs().size()) {
+            area.showParagraphAtTop(firstVisibleParagraph);
+        }
+    }
+
+    public int length() {
+        return chars;
+    }
+
+    public int compressedBytes() {
+        return compressed.length;
+    }
+}
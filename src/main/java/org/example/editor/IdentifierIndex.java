@@ -0,0 +1,246 @@
+package org.example.editor;
+
+import org.fxmisc.richtext.CodeArea;
+import org.fxmisc.richtext.model.PlainTextChange;
+import org.fxmisc.richtext.model.TwoDimensional;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+// Occurrence counts of every identifier in a document, each with its FuzzyMatcher character mask.
+// Built on first use and then maintained from the edit deltas.
+public class IdentifierIndex {
+
+    private static final int NEARBY_LINES = 200;
+    private static final Comparator<Occurrences> MOST_FREQUENT = Comparator
+            .comparingInt((Occurrences occurrences) -> -occurrences.count)
+            .thenComparing(occurrences -> occurrences.word);
+
+    private final CodeArea area;
+    private final TreeMap<String, Occurrences> counts = new TreeMap<>();
+    // The same entries by count, kept up to date from the edits but only filled in after a rebuild.
+    private final TreeSet<Occurrences> byCount = new TreeSet<>(MOST_FREQUENT);
+    private boolean built;
+
+    public IdentifierIndex(CodeArea area) {
+        this.area = area;
+    }
+
+    public boolean isBuilt() {
+        return built;
+    }
+
+    public void rebuild() {
+        built = false;
+        counts.clear();
+        byCount.clear();
+        int paragraphs = area.getParagraphs().size();
+        for (int i = 0; i < paragraphs; i++) {
+            String text = area.getParagraph(i).getText();
+            forEachIdentifier(text, 0, text.length(), word -> add(word, 1));
+        }
+        byCount.addAll(counts.values());
+        built = true;
+    }
+
+    public void update(List<PlainTextChange> changes) {
+        if (!built) {
+            return;
+        }
+        for (int i = 0; i < changes.size(); i++) {
+            PlainTextChange change = changes.get(i);
+            if (i > 0 && change.getPosition() < changes.get(i - 1).getInsertionEnd()) {
+                rebuild();
+                return;
+            }
+            int limit = i + 1 < changes.size() ? changes.get(i + 1).getPosition() : Integer.MAX_VALUE;
+            if (!apply(change, limit)) {
+                rebuild();
+                return;
+            }
+        }
+    }
+
+    // Identifiers never span a non-word character, so only the edited text plus the word
+    // characters touching both of its edges can change; the rest of the document is untouched.
+    private boolean apply(PlainTextChange change, int limit) {
+        TwoDimensional.Position start = area.offsetToPosition(change.getPosition(), TwoDimensional.Bias.Forward);
+        String left = area.getParagraph(start.getMajor()).getText();
+        int leftEnd = start.getMinor();
+        int leftStart = leftEnd;
+        while (leftStart > 0 && isWordChar(left.charAt(leftStart - 1))) {
+            leftStart--;
+        }
+        TwoDimensional.Position end = area.offsetToPosition(change.getInsertionEnd(), TwoDimensional.Bias.Forward);
+        String right = area.getParagraph(end.getMajor()).getText();
+        int rightStart = end.getMinor();
+        int rightEnd = rightStart;
+        while (rightEnd < right.length() && isWordChar(right.charAt(rightEnd))) {
+            rightEnd++;
+        }
+        if (change.getInsertionEnd() + (rightEnd - rightStart) >= limit) {
+            return false;
+        }
+        String prefix = left.substring(leftStart, leftEnd);
+        String suffix = right.substring(rightStart, rightEnd);
+        String removed = prefix + change.getRemoved() + suffix;
+        String inserted = prefix + change.getInserted() + suffix;
+        forEachIdentifier(removed, 0, removed.length(), word -> add(word, -1));
+        forEachIdentifier(inserted, 0, inserted.length(), word -> add(word, 1));
+        return true;
+    }
+
+    // Ranked by match quality first, then by how often the identifier occurs plus a bonus for
+    // appearing close to the caret; the word being typed is skipped when it occurs only where it
+    // is being typed. Words starting with the pattern's first character are ranked first, from
+    // their slice of the map; the rest are only scanned when those are not enough. Without a
+    // pattern the ranking is frequency and distance alone, so only the nearby words and the most
+    // frequent ones can make the list.
+    public List<FuzzyMatcher.Match> complete(FuzzyMatcher matcher, int caretParagraph, int limit) {
+        if (!built) {
+            rebuild();
+        }
+        String pattern = matcher.pattern();
+        Map<String, Integer> nearby = nearby(matcher, caretParagraph);
+        List<FuzzyMatcher.Match> matches = new ArrayList<>();
+        if (matcher.isEmpty()) {
+            for (String word : nearby.keySet()) {
+                rank(matcher, pattern, counts.get(word), nearby, matches);
+            }
+            int taken = 0;
+            for (Occurrences occurrences : byCount) {
+                if (taken++ == limit) {
+                    break;
+                }
+                if (!nearby.containsKey(occurrences.word)) {
+                    rank(matcher, pattern, occurrences, nearby, matches);
+                }
+            }
+        } else {
+            char first = pattern.charAt(0);
+            List<SortedMap<String, Occurrences>> slices = new ArrayList<>();
+            slices.add(slice(Character.toLowerCase(first)));
+            if (Character.toUpperCase(first) != Character.toLowerCase(first)) {
+                slices.add(slice(Character.toUpperCase(first)));
+            }
+            for (SortedMap<String, Occurrences> slice : slices) {
+                for (Occurrences occurrences : slice.values()) {
+                    rank(matcher, pattern, occurrences, nearby, matches);
+                }
+            }
+            if (matches.size() < limit) {
+                for (Occurrences occurrences : counts.values()) {
+                    char start = occurrences.word.charAt(0);
+                    if (Character.toLowerCase(start) != Character.toLowerCase(first)) {
+                        rank(matcher, pattern, occurrences, nearby, matches);
+                    }
+                }
+            }
+        }
+        matches.sort(FuzzyMatcher.BY_SCORE);
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    private SortedMap<String, Occurrences> slice(char first) {
+        return counts.subMap(String.valueOf(first), String.valueOf((char) (first + 1)));
+    }
+
+    private static void rank(FuzzyMatcher matcher, String pattern, Occurrences occurrences,
+                             Map<String, Integer> nearby, List<FuzzyMatcher.Match> matches) {
+        String word = occurrences.word;
+        int match = matcher.score(word, occurrences.mask);
+        if (match == FuzzyMatcher.NO_MATCH || (word.equals(pattern) && occurrences.count <= 1)) {
+            return;
+        }
+        double score = match + 2 * Math.log(1 + occurrences.count) / Math.log(2);
+        Integer distance = nearby.get(word);
+        if (distance != null) {
+            score += 8.0 * (NEARBY_LINES - distance) / NEARBY_LINES;
+        }
+        matches.add(new FuzzyMatcher.Match(word, score));
+    }
+
+    private Map<String, Integer> nearby(FuzzyMatcher matcher, int caretParagraph) {
+        Map<String, Integer> distances = new HashMap<>();
+        int paragraphs = area.getParagraphs().size();
+        int from = Math.max(0, caretParagraph - NEARBY_LINES);
+        int to = Math.min(paragraphs - 1, caretParagraph + NEARBY_LINES);
+        for (int i = from; i <= to; i++) {
+            int distance = Math.abs(i - caretParagraph);
+            String text = area.getParagraph(i).getText();
+            forEachIdentifier(text, 0, text.length(), word -> {
+                Occurrences occurrences = counts.get(word);
+                if (occurrences != null && matcher.mayMatch(occurrences.mask)) {
+                    distances.merge(word, distance, Math::min);
+                }
+            });
+        }
+        return distances;
+    }
+
+    private void add(String word, int delta) {
+        Occurrences occurrences = counts.get(word);
+        if (occurrences == null) {
+            if (delta > 0) {
+                occurrences = new Occurrences(word, delta, FuzzyMatcher.mask(word));
+                counts.put(word, occurrences);
+                if (built) {
+                    byCount.add(occurrences);
+                }
+            }
+            return;
+        }
+        if (built) {
+            byCount.remove(occurrences);
+        }
+        occurrences.count += delta;
+        if (occurrences.count <= 0) {
+            counts.remove(word);
+        } else if (built) {
+            byCount.add(occurrences);
+        }
+    }
+
+    // Same tokens as \b[a-zA-Z_]\w*\b: maximal runs of word characters that do not start with a
+    // digit.
+    static void forEachIdentifier(String text, int from, int to, Consumer<String> action) {
+        int i = from;
+        while (i < to) {
+            if (!isWordChar(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < to && isWordChar(text.charAt(i))) {
+                i++;
+            }
+            char first = text.charAt(start);
+            if (first < '0' || first > '9') {
+                action.accept(text.substring(start, i));
+            }
+        }
+    }
+
+    static boolean isWordChar(char ch) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9') || ch == '_';
+    }
+
+    private static final class Occurrences {
+        final String word;
+        int count;
+        final long mask;
+
+        Occurrences(String word, int count, long mask) {
+            this.word = word;
+            this.count = count;
+            this.mask = mask;
+        }
+    }
+}
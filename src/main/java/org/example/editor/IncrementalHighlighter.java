@@ -0,0 +1,416 @@
+package org.example.editor;
+
+import javafx.application.Platform;
+import org.fxmisc.richtext.CodeArea;
+import org.fxmisc.richtext.model.PlainTextChange;
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+import org.fxmisc.richtext.model.TwoDimensional;
+import org.reactfx.EventStreams;
+import org.reactfx.Subscription;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class IncrementalHighlighter {
+
+    private static final int DIRTY = 1 << 30;
+    private static final int STATE_MASK = DIRTY - 1;
+    private static final int PARAGRAPHS_PER_PASS = 2000;
+    private static final int PARAGRAPHS_PER_ASYNC_PASS = 20000;
+    private static final int VIEWPORT_MARGIN = 40;
+    private static final int VIEWPORT_GUESS = 80;
+    private static final Map<String, Collection<String>> STYLES = new HashMap<>();
+    private static final AtomicInteger WORKER_COUNT = new AtomicInteger();
+    private static final ExecutorService WORKER = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1)), runnable -> {
+                Thread thread = new Thread(runnable, "highlight-worker-" + WORKER_COUNT.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final CodeArea area;
+    private final IntList states = new IntList(256);
+    private Lexer lexer;
+    private Subscription subscription;
+    private int dirtyHint;
+    private boolean passScheduled;
+    private boolean async;
+    private boolean viewportFirst;
+    private boolean viewportScheduled;
+    private long paintedVersion = -1;
+    private int paintedFrom;
+    private int paintedTo;
+    private long version;
+    private Future<?> inFlight;
+
+    public IncrementalHighlighter(CodeArea area) {
+        this.area = area;
+    }
+
+    public void attach() {
+        if (subscription == null) {
+            subscription = area.multiPlainChanges().subscribe(this::onChanges)
+                    .and(EventStreams.invalidationsOf(area.getVisibleParagraphs()).subscribe(ignore -> scheduleViewport()));
+            markAllDirty();
+            schedulePass();
+        }
+    }
+
+    public void detach() {
+        cancel();
+        if (subscription != null) {
+            subscription.unsubscribe();
+            subscription = null;
+        }
+        states.clear();
+    }
+
+    public void setAsync(boolean async) {
+        if (this.async != async) {
+            cancel();
+            this.async = async;
+        }
+    }
+
+    public void setViewportFirst(boolean viewportFirst) {
+        this.viewportFirst = viewportFirst;
+    }
+
+    public void cancel() {
+        version++;
+        if (inFlight != null) {
+            inFlight.cancel(true);
+            inFlight = null;
+        }
+    }
+
+    public void rehighlight(Lexer lexer) {
+        cancel();
+        this.lexer = lexer;
+        if (lexer == null) {
+            return;
+        }
+        markAllDirty();
+        if (viewportFirst) {
+            paintViewport();
+            schedulePass();
+        } else {
+            runPass(Integer.MAX_VALUE);
+        }
+    }
+
+    private void onChanges(List<PlainTextChange> changes) {
+        cancel();
+        if (!ascending(changes)) {
+            markAllDirty();
+        } else {
+            for (PlainTextChange change : changes) {
+                splice(change);
+            }
+            if (states.size() != area.getParagraphs().size()) {
+                markAllDirty();
+            }
+        }
+        schedulePass();
+        scheduleViewport();
+    }
+
+    private static boolean ascending(List<PlainTextChange> changes) {
+        for (int i = 1; i < changes.size(); i++) {
+            if (changes.get(i).getPosition() < changes.get(i - 1).getInsertionEnd()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Replaces the paragraphs spanned by the change with dirty entries. The last new paragraph
+    // inherits the end state of the last removed one so that the pass can tell whether the
+    // paragraph after the edit still sees the same entry state.
+    private void splice(PlainTextChange change) {
+        int paragraph = area.offsetToPosition(change.getPosition(), TwoDimensional.Bias.Forward).getMajor();
+        int removedBreaks = countBreaks(change.getRemoved());
+        int insertedBreaks = countBreaks(change.getInserted());
+        if (paragraph + removedBreaks >= states.size()) {
+            markAllDirty();
+            return;
+        }
+        int oldEnd = states.get(paragraph + removedBreaks) & STATE_MASK;
+        states.replace(paragraph, removedBreaks + 1, insertedBreaks + 1, DIRTY);
+        states.set(paragraph + insertedBreaks, DIRTY | oldEnd);
+        dirtyHint = Math.min(dirtyHint, paragraph);
+    }
+
+    private void markAllDirty() {
+        states.resize(area.getParagraphs().size(), DIRTY);
+        states.fill(DIRTY);
+        dirtyHint = 0;
+    }
+
+    private static int countBreaks(String text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void schedulePass() {
+        if (passScheduled) {
+            return;
+        }
+        passScheduled = true;
+        Platform.runLater(() -> {
+            passScheduled = false;
+            if (subscription != null) {
+                runPass(PARAGRAPHS_PER_PASS);
+            }
+        });
+    }
+
+    private void scheduleViewport() {
+        if (!viewportFirst || viewportScheduled) {
+            return;
+        }
+        viewportScheduled = true;
+        Platform.runLater(() -> {
+            viewportScheduled = false;
+            if (subscription != null) {
+                paintViewport();
+            }
+        });
+    }
+
+    // Styles the visible paragraphs (plus a margin) ahead of the background sweep. The entry
+    // state is only a guess when the sweep has not reached the viewport yet, so the results are
+    // not stored and the paragraphs stay dirty until the sweep lexes them for real.
+    private void paintViewport() {
+        int count = area.getParagraphs().size();
+        if (lexer == null || states.size() != count) {
+            return;
+        }
+        int first = 0;
+        int last = Math.min(count, VIEWPORT_GUESS) - 1;
+        if (!area.getVisibleParagraphs().isEmpty()) {
+            first = area.firstVisibleParToAllParIndex();
+            last = area.lastVisibleParToAllParIndex();
+        }
+        int from = Math.max(0, first - VIEWPORT_MARGIN);
+        int to = Math.min(count, last + 1 + VIEWPORT_MARGIN);
+        if (paintedVersion == version && from >= paintedFrom && to <= paintedTo) {
+            return;
+        }
+        boolean pending = false;
+        for (int i = from; i < to && !pending; i++) {
+            pending = (states.get(i) & DIRTY) != 0;
+        }
+        if (!pending) {
+            return;
+        }
+        String[] lines = new String[to - from];
+        for (int i = from; i < to; i++) {
+            lines[i - from] = area.getParagraph(i).getText();
+        }
+        int entry = from == 0 ? Lexer.STATE_DEFAULT : states.get(from - 1) & STATE_MASK;
+        Pass pass = lex(lexer, from, lines, states.copy(from, to), entry, count);
+        paintedVersion = version;
+        paintedFrom = from;
+        paintedTo = to;
+        for (Run run : pass.runs) {
+            if (run.spans.length() > 0) {
+                area.setStyleSpans(area.getAbsolutePosition(run.paragraph, 0), run.spans);
+            }
+        }
+    }
+
+    private void runPass(int budget) {
+        if (lexer == null || inFlight != null) {
+            return;
+        }
+        boolean background = async && subscription != null;
+        if (background) {
+            budget = PARAGRAPHS_PER_ASYNC_PASS;
+        }
+        int count = area.getParagraphs().size();
+        if (states.size() != count) {
+            markAllDirty();
+        }
+        int from = firstDirty();
+        if (from < 0) {
+            return;
+        }
+        int to = (int) Math.min(count, (long) from + budget);
+        String[] lines = new String[to - from];
+        for (int i = from; i < to; i++) {
+            lines[i - from] = area.getParagraph(i).getText();
+        }
+        int entry = from == 0 ? Lexer.STATE_DEFAULT : states.get(from - 1) & STATE_MASK;
+        int[] snapshot = states.copy(from, to);
+        if (!background) {
+            finishPass(lex(lexer, from, lines, snapshot, entry, count), to, count);
+            return;
+        }
+        Lexer jobLexer = lexer;
+        long jobVersion = version;
+        inFlight = WORKER.submit(() -> {
+            Pass pass;
+            try {
+                pass = lex(jobLexer, from, lines, snapshot, entry, count);
+            } catch (CancellationException ex) {
+                return;
+            } catch (RuntimeException ex) {
+                Platform.runLater(() -> {
+                    if (jobVersion == version) {
+                        inFlight = null;
+                    }
+                });
+                return;
+            }
+            Platform.runLater(() -> {
+                if (jobVersion != version) {
+                    return;
+                }
+                inFlight = null;
+                finishPass(pass, to, count);
+            });
+        });
+    }
+
+    private void finishPass(Pass pass, int to, int count) {
+        apply(pass);
+        if (pass.carry && to < count) {
+            states.set(to, states.get(to) | DIRTY);
+        }
+        dirtyHint = to;
+        if (firstDirty() >= 0) {
+            schedulePass();
+        }
+    }
+
+    private int firstDirty() {
+        int count = states.size();
+        for (int i = Math.max(0, dirtyHint); i < count; i++) {
+            if ((states.get(i) & DIRTY) != 0) {
+                dirtyHint = i;
+                return i;
+            }
+        }
+        dirtyHint = count;
+        return -1;
+    }
+
+    private void apply(Pass pass) {
+        states.copyInto(pass.states, 0, pass.from, pass.states.length);
+        for (Run run : pass.runs) {
+            if (run.spans.length() > 0) {
+                area.setStyleSpans(area.getAbsolutePosition(run.paragraph, 0), run.spans);
+            }
+        }
+    }
+
+    static Pass lex(Lexer lexer, int from, String[] lines, int[] states, int entry, int paragraphCount) {
+        Pass pass = new Pass(from, states);
+        SpanCollector collector = null;
+        int runStart = 0;
+        boolean carry = false;
+        for (int i = 0; i < lines.length; i++) {
+            if ((i & 255) == 0 && Thread.currentThread().isInterrupted()) {
+                throw new CancellationException();
+            }
+            int stored = states[i];
+            if ((stored & DIRTY) == 0 && !carry) {
+                if (collector != null) {
+                    pass.runs.add(new Run(from + runStart, collector.create()));
+                    collector = null;
+                }
+                entry = stored;
+                continue;
+            }
+            if (collector == null) {
+                collector = new SpanCollector();
+                runStart = i;
+            }
+            String line = lines[i];
+            int end = lexer.lexLine(line, entry, collector);
+            collector.finishLine(line.length(), from + i < paragraphCount - 1);
+            carry = end != (stored & STATE_MASK);
+            states[i] = end;
+            entry = end;
+        }
+        if (collector != null) {
+            pass.runs.add(new Run(from + runStart, collector.create()));
+        }
+        pass.carry = carry;
+        return pass;
+    }
+
+    static Collection<String> styleOf(String styleClass) {
+        if (styleClass == null) {
+            return Collections.emptyList();
+        }
+        synchronized (STYLES) {
+            return STYLES.computeIfAbsent(styleClass, Collections::singleton);
+        }
+    }
+
+    static final class Pass {
+        final int from;
+        final int[] states;
+        final List<Run> runs = new ArrayList<>();
+        boolean carry;
+
+        Pass(int from, int[] states) {
+            this.from = from;
+            this.states = states;
+        }
+    }
+
+    static final class Run {
+        final int paragraph;
+        final StyleSpans<Collection<String>> spans;
+
+        Run(int paragraph, StyleSpans<Collection<String>> spans) {
+            this.paragraph = paragraph;
+            this.spans = spans;
+        }
+    }
+
+    static final class SpanCollector implements Lexer.TokenSink {
+        private final StyleSpansBuilder<Collection<String>> builder = new StyleSpansBuilder<>();
+        private int pos;
+
+        @Override
+        public void token(int start, int end, String styleClass) {
+            if (end <= start) {
+                return;
+            }
+            if (start > pos) {
+                builder.add(Collections.emptyList(), start - pos);
+            }
+            builder.add(styleOf(styleClass), end - start);
+            pos = end;
+        }
+
+        void finishLine(int length, boolean lineBreak) {
+            int tail = length - pos + (lineBreak ? 1 : 0);
+            builder.add(Collections.emptyList(), tail);
+            pos = 0;
+        }
+
+        StyleSpans<Collection<String>> create() {
+            return builder.create();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.example.editor;
+
+import java.util.Arrays;
+
+public final class IntList {
+
+    private int[] data;
+    private int size;
+
+    public IntList() {
+        this(16);
+    }
+
+    public IntList(int capacity) {
+        data = new int[Math.max(4, capacity)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        return data[index];
+    }
+
+    public void set(int index, int value) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        data[index] = value;
+    }
+
+    public void add(int value) {
+        ensureCapacity(size + 1);
+        data[size++] = value;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void resize(int newSize, int fill) {
+        ensureCapacity(newSize);
+        if (newSize > size) {
+            Arrays.fill(data, size, newSize, fill);
+        }
+        size = newSize;
+    }
+
+    public void fill(int value) {
+        Arrays.fill(data, 0, size, value);
+    }
+
+    public void replace(int index, int removeCount, int insertCount, int fill) {
+        if (index < 0 || removeCount < 0 || index + removeCount > size) {
+            throw new IndexOutOfBoundsException("index " + index + ", remove " + removeCount + ", size " + size);
+        }
+        int newSize = size - removeCount + insertCount;
+        ensureCapacity(newSize);
+        System.arraycopy(data, index + removeCount, data, index + insertCount, size - index - removeCount);
+        Arrays.fill(data, index, index + insertCount, fill);
+        size = newSize;
+    }
+
+    public int[] copy(int from, int to) {
+        return Arrays.copyOfRange(data, from, to);
+    }
+
+    public void copyInto(int[] source, int sourceFrom, int index, int length) {
+        System.arraycopy(source, sourceFrom, data, index, length);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > data.length) {
+            data = Arrays.copyOf(data, Math.max(capacity, data.length + (data.length >> 1)));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.example.editor;
+
+import java.util.concurrent.CancellationException;
+
+// Text handed to java.util.regex so a runaway pattern can be stopped: every few thousand charAt
+// calls it checks for thread interruption and for the deadline, and throws instead of returning.
+public final class InterruptibleCharSequence implements CharSequence {
+
+    private static final int CHECK_INTERVAL = 4096;
+
+    private final CharSequence text;
+    private final long deadlineNanos;
+    private int calls;
+
+    public InterruptibleCharSequence(CharSequence text, long deadlineNanos) {
+        this.text = text;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (++calls >= CHECK_INTERVAL) {
+            calls = 0;
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException();
+            }
+            if (System.nanoTime() - deadlineNanos > 0) {
+                throw new BudgetExceededException();
+            }
+        }
+        return text.charAt(index);
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    // Only used for group text, which is short-lived and needs no checks.
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return text.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+
+    public static final class BudgetExceededException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public BudgetExceededException() {
+            super("time budget exceeded", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.example.editor;
+
+import org.example.io.ByteSource;
+import org.example.io.FileByteSource;
+import org.example.io.LineIndex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+public class LargeDocument implements Closeable {
+
+    public static final int WINDOW_LINES = 5000;
+    public static final long WINDOW_BYTES = 4L * 1024 * 1024;
+
+    private final ByteSource source;
+    private final PieceTable table;
+    private long windowStart;
+    private int windowLines;
+    private boolean windowDirty;
+
+    private LargeDocument(ByteSource source, PieceTable table) {
+        this.source = source;
+        this.table = table;
+    }
+
+    public static LargeDocument open(Path path, Charset charset, int bomLength) throws IOException {
+        return open(path, charset, bomLength, () -> false, scannedBytes -> {
+        });
+    }
+
+    public static LargeDocument open(Path path, Charset charset, int bomLength,
+                                     BooleanSupplier cancelled, LongConsumer progress) throws IOException {
+        ByteSource source = new FileByteSource(path);
+        try {
+            int unit = charset.name().startsWith("UTF-16") ? 2 : 1;
+            LineIndex index = new LineIndex(source, bomLength, unit, !"UTF-16LE".equals(charset.name()));
+            if (!index.build(cancelled, progress)) {
+                throw new CancellationException();
+            }
+            return new LargeDocument(source, new PieceTable(index, charset));
+        } catch (IOException | RuntimeException ex) {
+            source.close();
+            throw ex;
+        }
+    }
+
+    public long lineCount() {
+        return table.lineCount();
+    }
+
+    // Such files go to the read-only viewer, which shows each line cut to a fixed length.
+    public boolean hasOverlongLines() {
+        return table.index().longestLine() > PieceTable.MAX_LINE_BYTES;
+    }
+
+    public long windowStart() {
+        return windowStart;
+    }
+
+    public int windowLines() {
+        return windowLines;
+    }
+
+    public void markWindowDirty() {
+        windowDirty = true;
+    }
+
+    public String loadWindow(long start) throws IOException {
+        windowStart = Math.max(0, Math.min(start, table.lineCount() - 1));
+        List<String> lines = table.lines(windowStart, WINDOW_LINES, WINDOW_BYTES);
+        windowLines = lines.size();
+        windowDirty = false;
+        return String.join("\n", lines);
+    }
+
+    public void commitWindow(String text) {
+        if (!windowDirty) {
+            return;
+        }
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', start)) {
+            lines.add(text.substring(start, i));
+            start = i + 1;
+        }
+        lines.add(text.substring(start));
+        table.replaceLines(windowStart, windowLines, lines);
+        windowLines = lines.size();
+        windowDirty = false;
+    }
+
+    public Iterator<String> lines() {
+        return new Iterator<>() {
+            private long next;
+            private List<String> page = List.of();
+            private int pageIndex;
+
+            @Override
+            public boolean hasNext() {
+                return next < table.lineCount();
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (pageIndex == page.size()) {
+                    try {
+                        page = table.lines(next, WINDOW_LINES, WINDOW_BYTES);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                    pageIndex = 0;
+                }
+                next++;
+                return page.get(pageIndex++);
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
@@ -0,0 +1,216 @@
+package org.example.editor;
+
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.SelectionMode;
+import javafx.util.Duration;
+import org.example.io.FileByteSource;
+import org.example.io.LineIndex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LargeFileViewer implements Closeable {
+
+    private static final int MAX_LINE_BYTES = 64 * 1024;
+    private static final int MAX_COPY_LINES = 100_000;
+    private static final AtomicInteger INDEXER_COUNT = new AtomicInteger();
+    private static final ExecutorService INDEXER = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "line-indexer-" + INDEXER_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final FileByteSource source;
+    private final LineIndex index;
+    private final Charset charset;
+    private final LineList lines = new LineList();
+    private final ListView<Long> view = new ListView<>(lines);
+    private final Timeline progress;
+    private volatile boolean closed;
+    private volatile String error;
+    private Runnable onProgress;
+
+    public LargeFileViewer(Path path, Charset charset, int bomLength) throws IOException {
+        this.source = new FileByteSource(path);
+        this.charset = charset;
+        int unit = charset.name().startsWith("UTF-16") ? 2 : 1;
+        this.index = new LineIndex(source, bomLength, unit, !"UTF-16LE".equals(charset.name()));
+
+        view.getStyleClass().add("large-viewer");
+        view.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        view.setCellFactory(list -> new LineCell());
+
+        progress = new Timeline(new KeyFrame(Duration.millis(200), event -> publish()));
+        progress.setCycleCount(Timeline.INDEFINITE);
+        progress.play();
+        INDEXER.submit(() -> {
+            try {
+                index.build(() -> closed);
+            } catch (IOException | RuntimeException ex) {
+                error = ex.getMessage() == null ? ex.toString() : ex.getMessage();
+            }
+            Platform.runLater(this::publish);
+        });
+    }
+
+    public ListView<Long> view() {
+        return view;
+    }
+
+    public Charset charset() {
+        return charset;
+    }
+
+    public long size() {
+        return source.size();
+    }
+
+    public long lineCount() {
+        return index.lineCount();
+    }
+
+    public boolean isIndexed() {
+        return index.isComplete();
+    }
+
+    public double progress() {
+        long size = source.size();
+        return size == 0 ? 1.0 : Math.min(1.0, (double) index.scannedBytes() / size);
+    }
+
+    public String error() {
+        return error;
+    }
+
+    public void setOnProgress(Runnable onProgress) {
+        this.onProgress = onProgress;
+    }
+
+    public String copySelection() throws IOException {
+        List<Integer> selected = new ArrayList<>(view.getSelectionModel().getSelectedIndices());
+        selected.sort(null);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < selected.size() && i < MAX_COPY_LINES; i++) {
+            if (i > 0) {
+                sb.append(System.lineSeparator());
+            }
+            sb.append(line(selected.get(i)));
+        }
+        return sb.toString();
+    }
+
+    // Only complete lines are exposed while the index is still being built, so a cell never shows
+    // a line whose end has not been scanned yet.
+    private void publish() {
+        if (closed) {
+            return;
+        }
+        boolean complete = index.isComplete() || error != null;
+        long known = complete ? index.lineCount() : index.lineCount() - 1;
+        lines.grow((int) Math.min(Integer.MAX_VALUE - 8, known));
+        if (complete) {
+            progress.stop();
+        }
+        if (onProgress != null) {
+            onProgress.run();
+        }
+    }
+
+    public String line(long line) throws IOException {
+        long start = index.lineStart(line);
+        long end = index.lineStart(line + 1);
+        int length = (int) Math.min(end - start, MAX_LINE_BYTES);
+        byte[] bytes = source.read(start, length);
+        String text = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                .decode(ByteBuffer.wrap(bytes))
+                .toString();
+        int cut = text.length();
+        while (cut > 0 && (text.charAt(cut - 1) == '\n' || text.charAt(cut - 1) == '\r')) {
+            cut--;
+        }
+        text = text.substring(0, cut);
+        return end - start > MAX_LINE_BYTES ? text + " …" : text;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        progress.stop();
+        try {
+            source.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private final class LineCell extends ListCell<Long> {
+        private final Label number = new Label();
+
+        LineCell() {
+            number.getStyleClass().add("lineno");
+            number.setStyle("-fx-padding: 0 8 0 5;");
+        }
+
+        @Override
+        protected void updateItem(Long item, boolean empty) {
+            super.updateItem(item, empty);
+            if (empty || item == null) {
+                setText(null);
+                setGraphic(null);
+                return;
+            }
+            int digits = Long.toString(index.lineCount()).length();
+            number.setText(String.format("%" + digits + "d", item + 1));
+            setGraphic(number);
+            try {
+                setText(line(item));
+            } catch (IOException ex) {
+                setText("");
+            }
+        }
+    }
+
+    private static final class LineList extends ObservableListBase<Long> {
+        private int size;
+
+        void grow(int newSize) {
+            if (newSize <= size) {
+                return;
+            }
+            int oldSize = size;
+            size = newSize;
+            beginChange();
+            nextAdd(oldSize, newSize);
+            endChange();
+        }
+
+        @Override
+        public Long get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return (long) index;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
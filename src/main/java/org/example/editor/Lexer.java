@@ -0,0 +1,15 @@
+package org.example.editor;
+
+public interface Lexer {
+
+    int STATE_DEFAULT = 0;
+    int STATE_BLOCK_COMMENT = 1;
+    int STATE_TEMPLATE_STRING = 2;
+
+    int lexLine(CharSequence line, int entryState, TokenSink sink);
+
+    @FunctionalInterface
+    interface TokenSink {
+        void token(int start, int end, String styleClass);
+    }
+}
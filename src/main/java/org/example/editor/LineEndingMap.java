@@ -0,0 +1,163 @@
+package org.example.editor;
+
+import org.fxmisc.richtext.CodeArea;
+import org.fxmisc.richtext.model.PlainTextChange;
+import org.fxmisc.richtext.model.TwoDimensional;
+
+import java.util.List;
+
+public class LineEndingMap {
+
+    public static final int CRLF = 0;
+    public static final int LF = 1;
+    public static final int CR = 2;
+    private static final String[] SEQUENCES = {"\r\n", "\n", "\r"};
+
+    private final int[] counts = new int[3];
+    private int uniformKind;
+    private int breaks;
+    private IntList kinds;
+
+    private LineEndingMap(int uniformKind) {
+        this.uniformKind = uniformKind;
+    }
+
+    public static LineEndingMap uniform(int kind, int breaks) {
+        LineEndingMap map = new LineEndingMap(kind);
+        map.breaks = breaks;
+        map.counts[kind] = breaks;
+        return map;
+    }
+
+    // One pass over the text as read from disk, before the editor folds every ending into '\n'.
+    // The per-line table is only allocated once a second kind of ending shows up.
+    public static LineEndingMap scan(CharSequence text, int fallbackKind) {
+        LineEndingMap map = new LineEndingMap(fallbackKind);
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char ch = text.charAt(i);
+            if (ch == '\n') {
+                map.add(LF);
+            } else if (ch == '\r') {
+                if (i + 1 < length && text.charAt(i + 1) == '\n') {
+                    i++;
+                    map.add(CRLF);
+                } else {
+                    map.add(CR);
+                }
+            }
+        }
+        return map;
+    }
+
+    private void add(int kind) {
+        if (breaks == 0) {
+            uniformKind = kind;
+        } else if (kinds == null && kind != uniformKind) {
+            kinds = new IntList(Math.max(16, breaks * 2));
+            kinds.resize(breaks, uniformKind);
+        }
+        if (kinds != null) {
+            kinds.add(kind);
+        }
+        counts[kind]++;
+        breaks++;
+    }
+
+    public boolean isMixed() {
+        return kinds != null && (counts[CRLF] > 0 ? 1 : 0) + (counts[LF] > 0 ? 1 : 0) + (counts[CR] > 0 ? 1 : 0) > 1;
+    }
+
+    public int count(int kind) {
+        return counts[kind];
+    }
+
+    public int dominant() {
+        int best = uniformKind;
+        for (int kind = 0; kind < counts.length; kind++) {
+            if (counts[kind] > counts[best]) {
+                best = kind;
+            }
+        }
+        return best;
+    }
+
+    public String separatorAfter(long line) {
+        int kind = kinds != null && line < kinds.size() ? kinds.get((int) line) : uniformKind;
+        return SEQUENCES[kind];
+    }
+
+    public void reset(int kind) {
+        counts[CRLF] = 0;
+        counts[LF] = 0;
+        counts[CR] = 0;
+        counts[kind] = breaks;
+        uniformKind = kind;
+        kinds = null;
+    }
+
+    // Entry i is the break after paragraph i. A change replaces the breaks it removed with the
+    // ones it inserted, which take `insertedKind`; the break that ended the last edited paragraph
+    // keeps its original kind.
+    public void update(List<PlainTextChange> changes, CodeArea area, int insertedKind) {
+        for (int i = 0; i < changes.size(); i++) {
+            PlainTextChange change = changes.get(i);
+            if (i > 0 && change.getPosition() < changes.get(i - 1).getInsertionEnd()) {
+                resync(area, insertedKind);
+                return;
+            }
+            int removed = countBreaks(change.getRemoved());
+            int inserted = countBreaks(change.getInserted());
+            if (removed == 0 && inserted == 0) {
+                continue;
+            }
+            int paragraph = area.offsetToPosition(change.getPosition(), TwoDimensional.Bias.Forward).getMajor();
+            if (kinds == null && insertedKind != uniformKind && inserted > 0) {
+                kinds = new IntList(Math.max(16, breaks * 2));
+                kinds.resize(breaks, uniformKind);
+            }
+            if (kinds != null) {
+                if (paragraph + removed > kinds.size()) {
+                    resync(area, insertedKind);
+                    return;
+                }
+                for (int j = 0; j < removed; j++) {
+                    counts[kinds.get(paragraph + j)]--;
+                }
+                kinds.replace(paragraph, removed, inserted, insertedKind);
+            } else {
+                counts[uniformKind] -= removed;
+            }
+            counts[insertedKind] += inserted;
+            breaks += inserted - removed;
+        }
+        if (breaks != area.getParagraphs().size() - 1) {
+            resync(area, insertedKind);
+        }
+    }
+
+    private void resync(CodeArea area, int insertedKind) {
+        breaks = area.getParagraphs().size() - 1;
+        if (kinds != null) {
+            kinds.resize(breaks, insertedKind);
+            counts[CRLF] = 0;
+            counts[LF] = 0;
+            counts[CR] = 0;
+            for (int i = 0; i < breaks; i++) {
+                counts[kinds.get(i)]++;
+            }
+        } else {
+            reset(uniformKind);
+        }
+    }
+
+    private static int countBreaks(String text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+}
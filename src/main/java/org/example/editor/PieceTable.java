@@ -0,0 +1,237 @@
+package org.example.editor;
+
+import org.example.io.LineIndex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PieceTable {
+
+    // A line is always read whole, so a file with a longer one cannot be edited through the table.
+    public static final long MAX_LINE_BYTES = 1024 * 1024;
+
+    private final LineIndex index;
+    private final Charset charset;
+    private final StringBuilder added = new StringBuilder();
+    private final List<Piece> pieces = new ArrayList<>();
+    private long lineCount;
+
+    public PieceTable(LineIndex index, Charset charset) {
+        this.index = index;
+        this.charset = charset;
+        lineCount = index.lineCount();
+        pieces.add(Piece.original(0, lineCount));
+    }
+
+    public LineIndex index() {
+        return index;
+    }
+
+    public Charset charset() {
+        return charset;
+    }
+
+    public long lineCount() {
+        return lineCount;
+    }
+
+    public int pieceCount() {
+        return pieces.size();
+    }
+
+    public long addedChars() {
+        return added.length();
+    }
+
+    public List<String> lines(long from, int maxLines, long maxBytes) throws IOException {
+        List<String> out = new ArrayList<>();
+        long first = 0;
+        long budget = maxBytes;
+        for (Piece piece : pieces) {
+            long last = first + piece.count;
+            if (last <= from) {
+                first = last;
+                continue;
+            }
+            if (out.size() >= maxLines || (budget <= 0 && !out.isEmpty())) {
+                break;
+            }
+            long offset = Math.max(0, from - first);
+            long wanted = Math.min(piece.count - offset, maxLines - out.size());
+            int before = out.size();
+            if (piece.original) {
+                budget -= readOriginal(piece.first + offset, wanted, budget, out.isEmpty(), out);
+            } else {
+                budget -= readAdded(piece, offset, wanted, out);
+            }
+            if (out.size() - before < wanted) {
+                break;
+            }
+            first = last;
+        }
+        return out;
+    }
+
+    public void replaceLines(long from, long count, List<String> replacement) {
+        if (from < 0 || count < 0 || from + count > lineCount) {
+            throw new IndexOutOfBoundsException("lines " + from + "+" + count + " of " + lineCount);
+        }
+        int startPiece = split(from);
+        int endPiece = split(from + count);
+        pieces.subList(startPiece, endPiece).clear();
+        if (!replacement.isEmpty()) {
+            int offset = added.length();
+            for (String line : replacement) {
+                added.append(line).append('\n');
+            }
+            pieces.add(startPiece, Piece.added(offset, added.length() - offset, replacement.size()));
+        }
+        lineCount += replacement.size() - count;
+        if (lineCount == 0) {
+            int offset = added.length();
+            added.append('\n');
+            pieces.add(Piece.added(offset, 1, 1));
+            lineCount = 1;
+        }
+    }
+
+    private int split(long line) {
+        long first = 0;
+        for (int i = 0; i < pieces.size(); i++) {
+            Piece piece = pieces.get(i);
+            if (line == first) {
+                return i;
+            }
+            long last = first + piece.count;
+            if (line < last) {
+                long head = line - first;
+                Piece[] parts = piece.split(head, added);
+                pieces.set(i, parts[0]);
+                pieces.add(i + 1, parts[1]);
+                return i + 1;
+            }
+            first = last;
+        }
+        return pieces.size();
+    }
+
+    private long readOriginal(long line, long count, long budget, boolean atLeastOne, List<String> out) throws IOException {
+        long start = index.lineStart(line);
+        long end = index.lineStart(line + count);
+        if (end - start > budget && count > 1) {
+            long low = atLeastOne ? 1 : 0;
+            long high = count;
+            while (low < high) {
+                long mid = (low + high + 1) >>> 1;
+                if (index.lineStart(line + mid) - start <= budget) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            count = low;
+            end = index.lineStart(line + count);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        if (count == 1 && end - start > MAX_LINE_BYTES) {
+            throw new IOException("Linha " + (line + 1) + " tem mais de " + MAX_LINE_BYTES / 1024 + " KB");
+        }
+        String text = decode(index.source().read(start, (int) (end - start)));
+        for (int read = splitLines(text, (int) count, out); read < count; read++) {
+            out.add("");
+        }
+        return end - start;
+    }
+
+    private long readAdded(Piece piece, long offset, long count, List<String> out) {
+        int pos = piece.addOffset;
+        for (long i = 0; i < offset; i++) {
+            pos = added.indexOf("\n", pos) + 1;
+        }
+        long bytes = 0;
+        for (long i = 0; i < count; i++) {
+            int end = added.indexOf("\n", pos);
+            out.add(added.substring(pos, end));
+            bytes += end - pos + 1;
+            pos = end + 1;
+        }
+        return bytes;
+    }
+
+    private String decode(byte[] bytes) throws CharacterCodingException {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = decoder.decode(ByteBuffer.wrap(bytes));
+        return chars.toString();
+    }
+
+    private static int splitLines(String text, int max, List<String> out) {
+        int count = 0;
+        int lineStart = 0;
+        int length = text.length();
+        for (int i = 0; i < length && count < max; i++) {
+            char ch = text.charAt(i);
+            if (ch == '\n' || ch == '\r') {
+                out.add(text.substring(lineStart, i));
+                count++;
+                if (ch == '\r' && i + 1 < length && text.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                lineStart = i + 1;
+            }
+        }
+        if (count < max) {
+            out.add(text.substring(Math.min(lineStart, length)));
+            count++;
+        }
+        return count;
+    }
+
+    private static final class Piece {
+        final boolean original;
+        final long first;
+        final long count;
+        final int addOffset;
+        final int addLength;
+
+        private Piece(boolean original, long first, long count, int addOffset, int addLength) {
+            this.original = original;
+            this.first = first;
+            this.count = count;
+            this.addOffset = addOffset;
+            this.addLength = addLength;
+        }
+
+        static Piece original(long first, long count) {
+            return new Piece(true, first, count, 0, 0);
+        }
+
+        static Piece added(int offset, int length, long count) {
+            return new Piece(false, 0, count, offset, length);
+        }
+
+        Piece[] split(long head, StringBuilder buffer) {
+            if (original) {
+                return new Piece[]{original(first, head), original(first + head, count - head)};
+            }
+            int pos = addOffset;
+            for (long i = 0; i < head; i++) {
+                pos = buffer.indexOf("\n", pos) + 1;
+            }
+            return new Piece[]{
+                    added(addOffset, pos - addOffset, head),
+                    added(pos, addOffset + addLength - pos, count - head)
+            };
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.example.editor;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public final class RegexLexer implements Lexer {
+
+    private final Pattern pattern;
+    private final boolean blockComments;
+    private final boolean templateStrings;
+
+    public RegexLexer(Pattern pattern, boolean blockComments, boolean templateStrings) {
+        this.pattern = pattern;
+        this.blockComments = blockComments;
+        this.templateStrings = templateStrings;
+    }
+
+    @Override
+    public int lexLine(CharSequence line, int entryState, TokenSink sink) {
+        int length = line.length();
+        int pos = 0;
+        if (entryState == STATE_BLOCK_COMMENT) {
+            int close = indexOf(line, '*', '/', 0);
+            if (close < 0) {
+                sink.token(0, length, "comment");
+                return STATE_BLOCK_COMMENT;
+            }
+            pos = close + 2;
+            sink.token(0, pos, "comment");
+        } else if (entryState == STATE_TEMPLATE_STRING) {
+            int close = templateEnd(line, 0);
+            if (close < 0) {
+                sink.token(0, length, "string");
+                return STATE_TEMPLATE_STRING;
+            }
+            pos = close + 1;
+            sink.token(0, pos, "string");
+        }
+        Matcher matcher = pattern.matcher(line);
+        while (pos < length && matcher.find(pos)) {
+            int state = openUnterminated(line, pos, matcher.start(), sink);
+            if (state != STATE_DEFAULT) {
+                return state;
+            }
+            sink.token(matcher.start(), matcher.end(), styleClassOf(matcher));
+            pos = matcher.end();
+        }
+        return openUnterminated(line, pos, length, sink);
+    }
+
+    // The pattern only matches block comments and template strings that close on the same line,
+    // so an opener left in the gap before the next match starts a construct spanning lines.
+    private int openUnterminated(CharSequence line, int from, int to, TokenSink sink) {
+        for (int i = from; i < to; i++) {
+            char ch = line.charAt(i);
+            if (blockComments && ch == '/' && i + 1 < line.length() && line.charAt(i + 1) == '*') {
+                sink.token(i, line.length(), "comment");
+                return STATE_BLOCK_COMMENT;
+            }
+            if (templateStrings && ch == '`') {
+                sink.token(i, line.length(), "string");
+                return STATE_TEMPLATE_STRING;
+            }
+        }
+        return STATE_DEFAULT;
+    }
+
+    private static String styleClassOf(Matcher matcher) {
+        return matcher.group("KEYWORD") != null ? "keyword" :
+                matcher.group("TYPE") != null ? "type" :
+                        matcher.group("FUNCTION") != null ? "function" :
+                                matcher.group("IDENT") != null ? "identifier" :
+                                        matcher.group("PAREN") != null ? "paren" :
+                                                matcher.group("BRACE") != null ? "brace" :
+                                                        matcher.group("BRACKET") != null ? "bracket" :
+                                                                matcher.group("SEMICOLON") != null ? "semicolon" :
+                                                                        matcher.group("STRING") != null ? "string" :
+                                                                                matcher.group("COMMENT") != null ? "comment" :
+                                                                                        matcher.group("NUMBER") != null ? "number" :
+                                                                                                null;
+    }
+
+    private static int indexOf(CharSequence line, char first, char second, int from) {
+        for (int i = from; i + 1 < line.length(); i++) {
+            if (line.charAt(i) == first && line.charAt(i + 1) == second) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int templateEnd(CharSequence line, int from) {
+        for (int i = from; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if (ch == '\\') {
+                i++;
+            } else if (ch == '`') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
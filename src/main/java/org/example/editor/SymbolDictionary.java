@@ -0,0 +1,219 @@
+package org.example.editor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Identifiers from every open tab, and optionally from the other files in each tab's folder,
+// shared by all editors. Each word counts how many sources contain it, so closing a tab only
+// drops the words no other source still has. Sources are tokenized on a single background
+// thread; lookups read the concurrent map directly and never wait for the indexer.
+public final class SymbolDictionary {
+
+    private static final int MIN_WORD_LENGTH = 3;
+    private static final int MAX_CANDIDATES = 5000;
+    private static final int MAX_FOLDER_FILES = 200;
+    private static final long MAX_FOLDER_FILE_BYTES = 512 * 1024;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "symbol-indexer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private final ConcurrentSkipListMap<String, Symbol> refs = new ConcurrentSkipListMap<>();
+    private final boolean indexFolders;
+
+    // Queued from the FX thread; a newer text for the same source replaces the older one.
+    private final Map<Object, Update> queued = new LinkedHashMap<>();
+    private boolean scheduled;
+
+    // Owned by the indexer thread.
+    private final Map<Object, Set<String>> contributions = new HashMap<>();
+    private final Map<Object, Path> folderOf = new HashMap<>();
+    private final Map<Path, Integer> folderUsers = new HashMap<>();
+
+    public SymbolDictionary(boolean indexFolders) {
+        this.indexFolders = indexFolders;
+    }
+
+    public void update(Object source, String text, Path folder) {
+        enqueue(source, new Update(text, indexFolders ? folder : null, false));
+    }
+
+    public void remove(Object source) {
+        enqueue(source, new Update(null, null, true));
+    }
+
+    // Ranked by match quality, then by how many sources share the word. Without a pattern only
+    // the first MAX_CANDIDATES words are ranked.
+    public List<FuzzyMatcher.Match> complete(FuzzyMatcher matcher, int limit) {
+        String pattern = matcher.pattern();
+        List<FuzzyMatcher.Match> matches = new ArrayList<>();
+        for (Map.Entry<String, Symbol> entry : refs.entrySet()) {
+            String word = entry.getKey();
+            Symbol symbol = entry.getValue();
+            int match = matcher.score(word, symbol.mask);
+            if (match == FuzzyMatcher.NO_MATCH || word.equals(pattern)) {
+                continue;
+            }
+            matches.add(new FuzzyMatcher.Match(word, match + 2 * Math.log(1 + symbol.refs) / Math.log(2)));
+            if (matcher.isEmpty() && matches.size() >= MAX_CANDIDATES) {
+                break;
+            }
+        }
+        matches.sort(FuzzyMatcher.BY_SCORE);
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    public int size() {
+        return refs.size();
+    }
+
+    private synchronized void enqueue(Object source, Update update) {
+        queued.put(source, update);
+        if (!scheduled) {
+            scheduled = true;
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        Map<Object, Update> updates;
+        synchronized (this) {
+            updates = new LinkedHashMap<>(queued);
+            queued.clear();
+            scheduled = false;
+        }
+        for (Map.Entry<Object, Update> entry : updates.entrySet()) {
+            Object source = entry.getKey();
+            Update update = entry.getValue();
+            if (update.removed) {
+                contribute(source, Set.of());
+                setFolder(source, null);
+            } else {
+                contribute(source, tokenize(update.text));
+                setFolder(source, update.folder);
+            }
+        }
+    }
+
+    private void setFolder(Object source, Path folder) {
+        Path previous = folderOf.get(source);
+        if (Objects.equals(previous, folder)) {
+            return;
+        }
+        if (previous != null) {
+            folderOf.remove(source);
+            int users = folderUsers.merge(previous, -1, Integer::sum);
+            if (users <= 0) {
+                folderUsers.remove(previous);
+                contribute(previous, Set.of());
+            }
+        }
+        if (folder != null) {
+            folderOf.put(source, folder);
+            if (folderUsers.merge(folder, 1, Integer::sum) == 1) {
+                contribute(folder, indexFolder(folder));
+            }
+        }
+    }
+
+    private void contribute(Object source, Set<String> words) {
+        Set<String> previous = contributions.remove(source);
+        if (previous != null) {
+            for (String word : previous) {
+                if (!words.contains(word)) {
+                    Symbol symbol = refs.get(word);
+                    if (symbol != null && --symbol.refs <= 0) {
+                        refs.remove(word);
+                    }
+                }
+            }
+        }
+        for (String word : words) {
+            if (previous == null || !previous.contains(word)) {
+                Symbol symbol = refs.get(word);
+                if (symbol == null) {
+                    refs.put(word, new Symbol(FuzzyMatcher.mask(word)));
+                } else {
+                    symbol.refs++;
+                }
+            }
+        }
+        if (!words.isEmpty()) {
+            contributions.put(source, words);
+        }
+    }
+
+    // Other files next to the open one, read as Latin-1 since only ASCII identifiers are kept.
+    // Binary files (anything with a NUL in it) and large files are skipped.
+    private Set<String> indexFolder(Path folder) {
+        Set<String> words = new HashSet<>();
+        int files = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+            for (Path file : stream) {
+                if (files >= MAX_FOLDER_FILES) {
+                    break;
+                }
+                if (!Files.isRegularFile(file) || Files.size(file) > MAX_FOLDER_FILE_BYTES) {
+                    continue;
+                }
+                byte[] bytes = Files.readAllBytes(file);
+                if (isBinary(bytes)) {
+                    continue;
+                }
+                files++;
+                words.addAll(tokenize(new String(bytes, StandardCharsets.ISO_8859_1)));
+            }
+        } catch (IOException | SecurityException ignored) {
+        }
+        return words;
+    }
+
+    private static boolean isBinary(byte[] bytes) {
+        int limit = Math.min(bytes.length, 8192);
+        for (int i = 0; i < limit; i++) {
+            if (bytes[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<String> tokenize(String text) {
+        Set<String> words = new HashSet<>();
+        IdentifierIndex.forEachIdentifier(text, 0, text.length(), word -> {
+            if (word.length() >= MIN_WORD_LENGTH) {
+                words.add(word);
+            }
+        });
+        return words;
+    }
+
+    // Only the indexer thread changes `refs`; lookups may see a count that is one update behind.
+    private static final class Symbol {
+        volatile int refs = 1;
+        final long mask;
+
+        Symbol(long mask) {
+            this.mask = mask;
+        }
+    }
+
+    private record Update(String text, Path folder, boolean removed) {
+    }
+}
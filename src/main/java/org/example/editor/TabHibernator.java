@@ -0,0 +1,94 @@
+package org.example.editor;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Keeps live editors in least-recently-used order and picks which ones to hibernate once there are
+// more than `maxLive` of them or their estimated footprint passes `maxBytes`.
+public class TabHibernator<T> {
+
+    private final int maxLive;
+    private final long maxBytes;
+    private final LinkedHashMap<T, Long> live = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<T, Long> hibernated = new LinkedHashMap<>();
+    private long liveBytes;
+    private long savedBytes;
+
+    public TabHibernator(int maxLive, long maxBytes) {
+        this.maxLive = Math.max(1, maxLive);
+        this.maxBytes = maxBytes;
+    }
+
+    public void touch(T key, long estimatedBytes) {
+        Long previous = live.put(key, estimatedBytes);
+        liveBytes += estimatedBytes - (previous == null ? 0 : previous);
+    }
+
+    public void remove(T key) {
+        Long bytes = live.remove(key);
+        if (bytes != null) {
+            liveBytes -= bytes;
+        }
+        Long saved = hibernated.remove(key);
+        if (saved != null) {
+            savedBytes -= saved;
+        }
+    }
+
+    // Least recently used first; the visible editor is never picked.
+    public List<T> victims(T visible) {
+        List<T> victims = new ArrayList<>();
+        int count = live.size();
+        long bytes = liveBytes;
+        Iterator<Map.Entry<T, Long>> it = live.entrySet().iterator();
+        while ((count > maxLive || bytes > maxBytes) && it.hasNext()) {
+            Map.Entry<T, Long> entry = it.next();
+            if (entry.getKey().equals(visible)) {
+                continue;
+            }
+            victims.add(entry.getKey());
+            count--;
+            bytes -= entry.getValue();
+        }
+        return victims;
+    }
+
+    public void hibernated(T key, long compressedBytes) {
+        Long bytes = live.remove(key);
+        if (bytes == null) {
+            return;
+        }
+        liveBytes -= bytes;
+        long saved = Math.max(0, bytes - compressedBytes);
+        hibernated.put(key, saved);
+        savedBytes += saved;
+    }
+
+    public void woke(T key) {
+        Long saved = hibernated.remove(key);
+        if (saved != null) {
+            savedBytes -= saved;
+        }
+    }
+
+    public int liveCount() {
+        return live.size();
+    }
+
+    public int hibernatedCount() {
+        return hibernated.size();
+    }
+
+    public long savedBytes() {
+        return savedBytes;
+    }
+
+    // A rough per-editor figure: the text itself plus the paragraph, style span and skin objects
+    // RichTextFX keeps for every line.
+    public static long estimate(int chars, int paragraphs) {
+        return chars * 4L + paragraphs * 320L;
+    }
+}
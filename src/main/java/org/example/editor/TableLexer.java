@@ -0,0 +1,260 @@
+package org.example.editor;
+
+import java.util.Arrays;
+
+public final class TableLexer implements Lexer {
+
+    private static final byte WORD = 1;
+    private static final byte DIGIT = 2;
+    private static final byte UPPER = 4;
+    private static final byte IDENT_START = 8;
+    private static final byte SPACE = 16;
+    private static final byte[] CHAR_CLASS = new byte[128];
+
+    static {
+        for (char ch = 'a'; ch <= 'z'; ch++) {
+            CHAR_CLASS[ch] = WORD | IDENT_START;
+        }
+        for (char ch = 'A'; ch <= 'Z'; ch++) {
+            CHAR_CLASS[ch] = WORD | IDENT_START | UPPER;
+        }
+        for (char ch = '0'; ch <= '9'; ch++) {
+            CHAR_CLASS[ch] = WORD | DIGIT;
+        }
+        CHAR_CLASS['_'] = WORD | IDENT_START;
+        for (char ch : new char[]{' ', '\t', '\n', '\u000B', '\f', '\r'}) {
+            CHAR_CLASS[ch] = SPACE;
+        }
+    }
+
+    private final char[][][] keywords;
+    private final char lineComment;
+    private final boolean blockComments;
+    private final boolean templateStrings;
+
+    private TableLexer(String[] keywords, char lineComment, boolean blockComments, boolean templateStrings) {
+        this.keywords = buildKeywordTable(keywords);
+        this.lineComment = lineComment;
+        this.blockComments = blockComments;
+        this.templateStrings = templateStrings;
+    }
+
+    public static TableLexer java(String[] keywords) {
+        return new TableLexer(keywords, '/', true, false);
+    }
+
+    public static TableLexer javaScript(String[] keywords) {
+        return new TableLexer(keywords, '/', true, true);
+    }
+
+    public static TableLexer python(String[] keywords) {
+        return new TableLexer(keywords, '#', false, false);
+    }
+
+    @Override
+    public int lexLine(CharSequence line, int entryState, TokenSink sink) {
+        int length = line.length();
+        int i = 0;
+        if (entryState == STATE_BLOCK_COMMENT) {
+            int close = blockCommentEnd(line, 0);
+            if (close < 0) {
+                sink.token(0, length, "comment");
+                return STATE_BLOCK_COMMENT;
+            }
+            sink.token(0, close, "comment");
+            i = close;
+        } else if (entryState == STATE_TEMPLATE_STRING) {
+            int close = quotedEnd(line, 0, '`', true);
+            if (close < 0) {
+                sink.token(0, length, "string");
+                return STATE_TEMPLATE_STRING;
+            }
+            sink.token(0, close, "string");
+            i = close;
+        }
+        while (i < length) {
+            char ch = line.charAt(i);
+            int cls = ch < 128 ? CHAR_CLASS[ch] : 0;
+            if ((cls & WORD) != 0) {
+                int end = i + 1;
+                while (end < length && isWord(line.charAt(end))) {
+                    end++;
+                }
+                if ((cls & IDENT_START) != 0) {
+                    sink.token(i, end, classifyWord(line, i, end, cls));
+                    i = end;
+                } else {
+                    i = lexNumber(line, i, end, sink);
+                }
+                continue;
+            }
+            switch (ch) {
+                case '(', ')' -> sink.token(i, i + 1, "paren");
+                case '{', '}' -> sink.token(i, i + 1, "brace");
+                case '[', ']' -> sink.token(i, i + 1, "bracket");
+                case ';' -> sink.token(i, i + 1, "semicolon");
+                case '"', '\'' -> {
+                    int close = quotedEnd(line, i + 1, ch, false);
+                    if (close > 0) {
+                        sink.token(i, close, "string");
+                        i = close;
+                        continue;
+                    }
+                }
+                case '`' -> {
+                    if (templateStrings) {
+                        int close = quotedEnd(line, i + 1, ch, false);
+                        if (close < 0) {
+                            sink.token(i, length, "string");
+                            return STATE_TEMPLATE_STRING;
+                        }
+                        sink.token(i, close, "string");
+                        i = close;
+                        continue;
+                    }
+                }
+                default -> {
+                    if (ch == lineComment && (ch != '/' || (i + 1 < length && line.charAt(i + 1) == '/'))) {
+                        sink.token(i, length, "comment");
+                        return STATE_DEFAULT;
+                    }
+                    if (blockComments && ch == '/' && i + 1 < length && line.charAt(i + 1) == '*') {
+                        int close = blockCommentEnd(line, i + 2);
+                        if (close < 0) {
+                            sink.token(i, length, "comment");
+                            return STATE_BLOCK_COMMENT;
+                        }
+                        sink.token(i, close, "comment");
+                        i = close;
+                        continue;
+                    }
+                }
+            }
+            i++;
+        }
+        return STATE_DEFAULT;
+    }
+
+    private String classifyWord(CharSequence line, int start, int end, int cls) {
+        if (isKeyword(line, start, end)) {
+            return "keyword";
+        }
+        if ((cls & UPPER) != 0) {
+            return "type";
+        }
+        int next = end;
+        while (next < line.length() && isSpace(line.charAt(next))) {
+            next++;
+        }
+        if (next < line.length() && line.charAt(next) == '(') {
+            return "function";
+        }
+        return "identifier";
+    }
+
+    // Mirrors \b\d+(\.\d+)?\b: a word that starts with a digit is only a number when it is all
+    // digits, optionally followed by a fraction that itself ends on a word boundary.
+    private static int lexNumber(CharSequence line, int start, int wordEnd, TokenSink sink) {
+        int digits = start;
+        while (digits < wordEnd && isDigit(line.charAt(digits))) {
+            digits++;
+        }
+        if (digits < wordEnd) {
+            return wordEnd;
+        }
+        int end = digits;
+        int length = line.length();
+        if (end + 1 < length && line.charAt(end) == '.' && isDigit(line.charAt(end + 1))) {
+            int fraction = end + 1;
+            while (fraction < length && isDigit(line.charAt(fraction))) {
+                fraction++;
+            }
+            if (fraction == length || !isWord(line.charAt(fraction))) {
+                end = fraction;
+            }
+        }
+        sink.token(start, end, "number");
+        return end;
+    }
+
+    private static int quotedEnd(CharSequence line, int from, char quote, boolean escapeAnything) {
+        int length = line.length();
+        for (int i = from; i < length; i++) {
+            char ch = line.charAt(i);
+            if (ch == '\\') {
+                if (i + 1 >= length || (!escapeAnything && isLineTerminator(line.charAt(i + 1)))) {
+                    return -1;
+                }
+                i++;
+            } else if (ch == quote) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int blockCommentEnd(CharSequence line, int from) {
+        for (int i = from; i + 1 < line.length(); i++) {
+            if (line.charAt(i) == '*' && line.charAt(i + 1) == '/') {
+                return i + 2;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isKeyword(CharSequence line, int start, int end) {
+        int length = end - start;
+        if (length >= keywords.length) {
+            return false;
+        }
+        char[][] bucket = keywords[length];
+        if (bucket == null) {
+            return false;
+        }
+        char first = line.charAt(start);
+        for (char[] candidate : bucket) {
+            if (candidate[0] != first) {
+                continue;
+            }
+            int i = 1;
+            while (i < length && candidate[i] == line.charAt(start + i)) {
+                i++;
+            }
+            if (i == length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static char[][][] buildKeywordTable(String[] words) {
+        int maxLength = 0;
+        for (String word : words) {
+            maxLength = Math.max(maxLength, word.length());
+        }
+        char[][][] table = new char[maxLength + 1][][];
+        for (String word : words) {
+            char[][] bucket = table[word.length()];
+            char[][] grown = bucket == null ? new char[1][] : Arrays.copyOf(bucket, bucket.length + 1);
+            grown[grown.length - 1] = word.toCharArray();
+            table[word.length()] = grown;
+        }
+        return table;
+    }
+
+    private static boolean isWord(char ch) {
+        return ch < 128 && (CHAR_CLASS[ch] & WORD) != 0;
+    }
+
+    private static boolean isDigit(char ch) {
+        return ch < 128 && (CHAR_CLASS[ch] & DIGIT) != 0;
+    }
+
+    private static boolean isSpace(char ch) {
+        return ch < 128 && (CHAR_CLASS[ch] & SPACE) != 0;
+    }
+
+    private static boolean isLineTerminator(char ch) {
+        return ch == '\n' || ch == '\r' || ch == '\u0085' || ch == '\u2028' || ch == '\u2029';
+    }
+}
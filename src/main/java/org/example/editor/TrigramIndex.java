@@ -0,0 +1,880 @@
+package org.example.editor;
+
+import javafx.application.Platform;
+import org.example.io.CharsetDetector;
+import org.example.io.FileByteSource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+// A trigram index of one folder tree, kept on disk so find-in-files can skip the files that cannot
+// match. Every file is decoded the way the editor would open it and each case-folded three-character
+// sequence within a line is hashed into one of BUCKETS posting lists of file ids; a collision only
+// adds candidates, which the scan then rules out. The index is built in the background, saved as
+// a new generation under the app-data folder and loaded from there next time. While it is open a
+// WatchService marks changed files dirty: dirty files are always candidates, and once there are
+// too many of them the index is rebuilt.
+public final class TrigramIndex {
+
+    public enum State { LOADING, BUILDING, READY, FAILED }
+
+    private static final int BUCKETS = 1 << 20;
+    private static final int MAGIC = 0x43505449;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 12;
+    private static final long MAX_INDEXED_BYTES = 16L * 1024 * 1024;
+    private static final long SEGMENT_BYTES = 32L * 1024 * 1024;
+    private static final int MIN_REBUILD_DIRTY = 256;
+    private static final int PARALLELISM = Math.max(4, Runtime.getRuntime().availableProcessors());
+    private static final int PROGRESS_FILES = 500;
+    private static final String FILES = "files.dat";
+    private static final String POSTINGS = "postings.dat";
+    private static final String CURRENT = "current";
+    private static final byte INDEXED = 0;
+    private static final byte BINARY = 1;
+    private static final byte UNINDEXED = 2;
+
+    private final Path root;
+    private final Path storage;
+    private final Function<CharsetDetector.Detection, Charset> charsets;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "trigram-indexer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private final Map<WatchKey, Path> watched = new ConcurrentHashMap<>();
+    private final Map<Path, Long> dirty = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger progress = new AtomicInteger();
+    private final AtomicBoolean notifyScheduled = new AtomicBoolean();
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+    private volatile Snapshot snapshot;
+    private volatile State state = State.LOADING;
+    private volatile boolean watchFailed;
+    private volatile boolean closed;
+    private volatile String error;
+    private WatchService watcher;
+    private Runnable listener = () -> {
+    };
+
+    // The index lives in its own folder under `indexes`, named after the root it covers.
+    public TrigramIndex(Path root, Path indexes, Function<CharsetDetector.Detection, Charset> charsets) {
+        this.root = root;
+        this.storage = indexes.resolve(storageName(root));
+        this.charsets = charsets;
+    }
+
+    public Path root() {
+        return root;
+    }
+
+    // Called on the FX thread whenever the state or the build progress changes.
+    public void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+
+    public void open() {
+        try {
+            watcher = root.getFileSystem().newWatchService();
+            Thread thread = new Thread(this::watch, "trigram-watcher");
+            thread.setDaemon(true);
+            thread.start();
+        } catch (IOException | UnsupportedOperationException ex) {
+            watchFailed = true;
+        }
+        schedule(() -> {
+            // Generations left by a build that was killed or never finished go first.
+            Snapshot loaded = load();
+            deleteOldGenerations(loaded == null ? null : loaded.dir);
+            if (loaded != null) {
+                snapshot = loaded;
+                refresh();
+                setState(State.READY);
+            } else {
+                rebuild();
+            }
+        });
+    }
+
+    public void close() {
+        closed = true;
+        worker.shutdownNow();
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException ignored) {
+            }
+        }
+        Snapshot current = snapshot;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    public Status status() {
+        Snapshot current = snapshot;
+        return new Status(state, current == null ? 0 : current.paths.length, current == null ? 0 : current.bytes,
+                current == null ? 0 : current.buildMillis, dirty.size(), progress.get(), !watchFailed, error);
+    }
+
+    // Files that may contain a match, or null when the index cannot narrow the search: it is not
+    // ready, changes under the root are not being watched, or the query has no literal of three
+    // characters or more. Reads posting lists from disk, so it is called off the FX thread.
+    public Collection<Path> candidates(FindQuery query) {
+        Snapshot current = snapshot;
+        if (current == null || state != State.READY || watchFailed) {
+            return null;
+        }
+        IntSet buckets = new IntSet();
+        for (String literal : query.requiredLiterals()) {
+            for (int i = 0; i + 3 <= literal.length(); i++) {
+                if (literal.substring(i, i + 3).chars().anyMatch(ch -> ch == '\n' || ch == '\r')) {
+                    continue;
+                }
+                buckets.add(bucket(FindQuery.foldCase(literal.charAt(i)), FindQuery.foldCase(literal.charAt(i + 1)),
+                        FindQuery.foldCase(literal.charAt(i + 2))));
+            }
+        }
+        if (buckets.size() == 0) {
+            return null;
+        }
+        int[] ids;
+        try {
+            List<int[]> lists = new ArrayList<>();
+            for (int bucket : buckets.toArray()) {
+                lists.add(current.postings(bucket));
+            }
+            lists.sort((a, b) -> Integer.compare(a.length, b.length));
+            ids = lists.get(0);
+            for (int i = 1; i < lists.size() && ids.length > 0; i++) {
+                ids = intersect(ids, lists.get(i));
+            }
+        } catch (IOException ex) {
+            return null;
+        }
+        Set<Path> files = new LinkedHashSet<>();
+        for (int id : ids) {
+            if (current.flags[id] == INDEXED) {
+                files.add(root.resolve(current.paths[id]));
+            }
+        }
+        for (int id = 0; id < current.flags.length; id++) {
+            if (current.flags[id] == UNINDEXED) {
+                files.add(root.resolve(current.paths[id]));
+            }
+        }
+        files.addAll(dirty.keySet());
+        return files;
+    }
+
+    private void setState(State state) {
+        this.state = state;
+        changed();
+    }
+
+    private void fail(Exception ex) {
+        error = ex.getMessage() == null ? ex.toString() : ex.getMessage();
+        setState(State.FAILED);
+    }
+
+    private void changed() {
+        if (notifyScheduled.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+                notifyScheduled.set(false);
+                listener.run();
+            });
+        }
+    }
+
+    // Files changed before the build started are covered by it; anything the watcher reports
+    // after that keeps a later stamp and stays dirty.
+    private void rebuild() throws IOException {
+        if (state != State.READY) {
+            setState(State.BUILDING);
+        }
+        long stamp = clock.incrementAndGet();
+        Snapshot built = build();
+        dirty.values().removeIf(changed -> changed <= stamp);
+        Snapshot previous = snapshot;
+        snapshot = built;
+        if (previous != null) {
+            previous.close();
+        }
+        setState(State.READY);
+        deleteOldGenerations(built.dir);
+    }
+
+    private void scheduleRebuild() {
+        if (closed || !rebuildScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        schedule(() -> {
+            rebuildScheduled.set(false);
+            rebuild();
+        });
+    }
+
+    private void schedule(Task task) {
+        try {
+            worker.execute(() -> {
+                try {
+                    task.run();
+                } catch (IOException | RuntimeException ex) {
+                    if (!closed) {
+                        fail(ex);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+        }
+    }
+
+    private Snapshot build() throws IOException {
+        long started = System.nanoTime();
+        progress.set(0);
+        Path dir = storage.resolve(Long.toString(System.currentTimeMillis()));
+        Files.createDirectories(dir);
+        // An aborted or failed build leaves nothing behind, spilled segments included.
+        boolean complete = false;
+        try {
+            Builder builder = new Builder(dir);
+            Semaphore permits = new Semaphore(PARALLELISM);
+            try (ExecutorService files = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("trigram-file-", 0).factory())) {
+                Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attrs) {
+                        if (closed) {
+                            return FileVisitResult.TERMINATE;
+                        }
+                        if (!path.equals(root) && FileSearch.isSkipped(path)) {
+                            return FileVisitResult.SKIP_SUBTREE;
+                        }
+                        register(path);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (closed) {
+                            return FileVisitResult.TERMINATE;
+                        }
+                        if (attrs.isRegularFile()) {
+                            permits.acquireUninterruptibly();
+                            files.execute(() -> {
+                                try {
+                                    builder.index(file, attrs);
+                                } finally {
+                                    permits.release();
+                                }
+                            });
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+            if (closed) {
+                throw new IOException("Índice fechado");
+            }
+            long millis = (System.nanoTime() - started) / 1_000_000;
+            builder.finish(millis);
+            writeCurrent(dir);
+            Snapshot built = Snapshot.open(dir, root);
+            complete = true;
+            return built;
+        } finally {
+            if (!complete) {
+                deleteGeneration(dir);
+            }
+        }
+    }
+
+    private Snapshot load() {
+        try {
+            Path current = storage.resolve(CURRENT);
+            if (!Files.exists(current)) {
+                return null;
+            }
+            Path dir = storage.resolve(Files.readString(current, StandardCharsets.UTF_8).trim());
+            return Snapshot.open(dir, root);
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    // Compares the tree with a loaded index: anything added or modified while the editor was not
+    // watching is marked dirty.
+    private void refresh() throws IOException {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return;
+        }
+        Map<String, Integer> ids = new HashMap<>(current.paths.length * 2);
+        for (int id = 0; id < current.paths.length; id++) {
+            ids.put(current.paths[id], id);
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (closed) {
+                    return FileVisitResult.TERMINATE;
+                }
+                if (!dir.equals(root) && FileSearch.isSkipped(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                register(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    Integer id = ids.get(root.relativize(file).toString());
+                    if (id == null || current.sizes[id] != attrs.size()
+                            || current.modified[id] != attrs.lastModifiedTime().toMillis()) {
+                        dirty.put(file, clock.incrementAndGet());
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        checkDirty();
+    }
+
+    private void register(Path dir) {
+        if (watcher == null || watchFailed) {
+            return;
+        }
+        try {
+            watched.put(dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), dir);
+        } catch (IOException | UnsupportedOperationException ex) {
+            // Usually the platform's limit on watched folders; the index can no longer be trusted.
+            watchFailed = true;
+            changed();
+        }
+    }
+
+    private void watch() {
+        try {
+            while (!closed) {
+                WatchKey key = watcher.take();
+                Path dir = watched.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        schedule(this::refresh);
+                        continue;
+                    }
+                    if (dir != null && event.context() instanceof Path name) {
+                        changed(dir.resolve(name), event.kind() == StandardWatchEventKinds.ENTRY_CREATE);
+                    }
+                }
+                if (!key.reset()) {
+                    watched.remove(key);
+                }
+                checkDirty();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+        }
+    }
+
+    private void changed(Path path, boolean created) {
+        if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            dirty.put(path, clock.incrementAndGet());
+            return;
+        }
+        if (!created || FileSearch.isSkipped(path)) {
+            return;
+        }
+        // A folder that appears with files in it, as after a move or an unzip, reports no events
+        // for them, so they are found by walking it.
+        try {
+            Files.walkFileTree(path, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (!dir.equals(path) && FileSearch.isSkipped(dir)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    register(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    dirty.put(file, clock.incrementAndGet());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void checkDirty() {
+        Snapshot current = snapshot;
+        int files = current == null ? 0 : current.paths.length;
+        if (dirty.size() > Math.max(MIN_REBUILD_DIRTY, files / 20)) {
+            scheduleRebuild();
+        }
+        changed();
+    }
+
+    private void writeCurrent(Path dir) throws IOException {
+        Path current = storage.resolve(CURRENT);
+        Path temp = storage.resolve(CURRENT + ".tmp");
+        Files.writeString(temp, dir.getFileName().toString(), StandardCharsets.UTF_8);
+        try {
+            Files.move(temp, current, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp, current, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Best effort: a generation still open elsewhere is left for the next build to remove.
+    // `keep` may be null, when no generation could be loaded.
+    private void deleteOldGenerations(Path keep) {
+        try (DirectoryStream<Path> generations = Files.newDirectoryStream(storage, Files::isDirectory)) {
+            for (Path generation : generations) {
+                if (!generation.equals(keep)) {
+                    deleteGeneration(generation);
+                }
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static void deleteGeneration(Path generation) {
+        try {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(generation)) {
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(generation);
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static String storageName(Path root) {
+        Path name = root.getFileName();
+        String base = name == null ? "raiz" : name.toString().replaceAll("[^A-Za-z0-9._-]", "_");
+        return base + "-" + Integer.toHexString(root.toAbsolutePath().normalize().toString().hashCode());
+    }
+
+    private static int bucket(char c0, char c1, char c2) {
+        long key = ((long) c0 << 32) | ((long) c1 << 16) | c2;
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - 20));
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static void writeVarint(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Índice corrompido");
+    }
+
+    private interface Task {
+        void run() throws IOException;
+    }
+
+    // `files` is the number of files in the index, `progress` how many the running build has read.
+    public record Status(State state, int files, long indexBytes, long buildMillis, int dirty, int progress,
+                         boolean watching, String error) {
+    }
+
+    // Collects the buckets of one file's trigrams, carrying the last two characters across chunks.
+    private static final class Trigrams {
+        final IntSet buckets = new IntSet();
+        char c0;
+        char c1;
+        int run;
+
+        void feed(CharBuffer chars) {
+            char[] array = chars.array();
+            int end = chars.arrayOffset() + chars.limit();
+            for (int i = chars.arrayOffset() + chars.position(); i < end; i++) {
+                char ch = array[i];
+                if (ch == '\n' || ch == '\r') {
+                    run = 0;
+                    continue;
+                }
+                ch = ch < 0x80 ? (ch >= 'A' && ch <= 'Z' ? (char) (ch + ('a' - 'A')) : ch) : FindQuery.foldCase(ch);
+                if (++run >= 3) {
+                    buckets.add(bucket(c0, c1, ch));
+                }
+                c0 = c1;
+                c1 = ch;
+            }
+        }
+    }
+
+    // Posting lists are appended in memory as delta-encoded varints, in file id order since ids are
+    // handed out under the same lock. Whenever they outgrow SEGMENT_BYTES they are spilled to a
+    // segment file; the deltas carry on across segments, so finishing only concatenates each
+    // bucket's pieces.
+    private final class Builder {
+        final Path dir;
+        final List<String> paths = new ArrayList<>();
+        final List<long[]> stats = new ArrayList<>();
+        final List<Byte> flags = new ArrayList<>();
+        final List<Path> segments = new ArrayList<>();
+        final byte[][] buffers = new byte[BUCKETS][];
+        final int[] lengths = new int[BUCKETS];
+        final int[] last = new int[BUCKETS];
+        long buffered;
+
+        Builder(Path dir) {
+            this.dir = dir;
+        }
+
+        void index(Path file, BasicFileAttributes attrs) {
+            byte flag = UNINDEXED;
+            Trigrams trigrams = new Trigrams();
+            if (attrs.size() <= MAX_INDEXED_BYTES) {
+                try {
+                    flag = FileSearch.decode(file, charsets, () -> closed, trigrams::feed) ? INDEXED : BINARY;
+                } catch (IOException ignored) {
+                }
+            }
+            int[] buckets = flag == INDEXED ? trigrams.buckets.toArray() : new int[0];
+            Arrays.sort(buckets);
+            try {
+                add(root.relativize(file).toString(), attrs.size(), attrs.lastModifiedTime().toMillis(), flag, buckets);
+            } catch (IOException ex) {
+                error = ex.getMessage();
+            }
+            if (progress.incrementAndGet() % PROGRESS_FILES == 0) {
+                changed();
+            }
+        }
+
+        synchronized void add(String path, long size, long modified, byte flag, int[] buckets) throws IOException {
+            int id = paths.size();
+            paths.add(path);
+            stats.add(new long[]{size, modified});
+            flags.add(flag);
+            for (int bucket : buckets) {
+                int delta = id + 1 - last[bucket];
+                last[bucket] = id + 1;
+                byte[] buffer = buffers[bucket];
+                if (buffer == null) {
+                    buffer = buffers[bucket] = new byte[8];
+                } else if (lengths[bucket] + 5 > buffer.length) {
+                    buffer = buffers[bucket] = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int length = lengths[bucket];
+                while ((delta & ~0x7F) != 0) {
+                    buffer[length++] = (byte) ((delta & 0x7F) | 0x80);
+                    delta >>>= 7;
+                }
+                buffer[length++] = (byte) delta;
+                buffered += length - lengths[bucket];
+                lengths[bucket] = length;
+            }
+            if (buffered >= SEGMENT_BYTES) {
+                spill();
+            }
+        }
+
+        void spill() throws IOException {
+            Path segment = dir.resolve("segment-" + segments.size());
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(segment), 1 << 16)) {
+                for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                    writeVarint(out, lengths[bucket]);
+                    if (lengths[bucket] > 0) {
+                        out.write(buffers[bucket], 0, lengths[bucket]);
+                    }
+                    buffers[bucket] = null;
+                    lengths[bucket] = 0;
+                }
+            }
+            segments.add(segment);
+            buffered = 0;
+        }
+
+        // postings.dat: header, every bucket's postings back to back, then BUCKETS + 1 offsets.
+        void finish(long buildMillis) throws IOException {
+            spill();
+            long[] offsets = new long[BUCKETS + 1];
+            List<InputStream> inputs = new ArrayList<>();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(dir.resolve(POSTINGS)), 1 << 16))) {
+                for (Path segment : segments) {
+                    inputs.add(new BufferedInputStream(Files.newInputStream(segment), 1 << 16));
+                }
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(BUCKETS);
+                long position = HEADER_BYTES;
+                byte[] copy = new byte[1 << 16];
+                for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                    offsets[bucket] = position;
+                    for (InputStream in : inputs) {
+                        int length = readVarint(in);
+                        if (copy.length < length) {
+                            copy = new byte[Math.max(length, copy.length * 2)];
+                        }
+                        if (in.readNBytes(copy, 0, length) != length) {
+                            throw new EOFException();
+                        }
+                        out.write(copy, 0, length);
+                        position += length;
+                    }
+                }
+                offsets[BUCKETS] = position;
+                for (long offset : offsets) {
+                    out.writeLong(offset);
+                }
+            } finally {
+                for (InputStream in : inputs) {
+                    in.close();
+                }
+                for (Path segment : segments) {
+                    Files.deleteIfExists(segment);
+                }
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(dir.resolve(FILES)), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(root.toString());
+                out.writeLong(buildMillis);
+                out.writeInt(paths.size());
+                for (int id = 0; id < paths.size(); id++) {
+                    out.writeUTF(paths.get(id));
+                    out.writeLong(stats.get(id)[0]);
+                    out.writeLong(stats.get(id)[1]);
+                    out.writeByte(flags.get(id));
+                }
+            }
+        }
+    }
+
+    // One generation of the index: the file table in memory, the postings read from disk on demand.
+    private static final class Snapshot {
+        final Path dir;
+        final String[] paths;
+        final long[] sizes;
+        final long[] modified;
+        final byte[] flags;
+        final long buildMillis;
+        final long bytes;
+        final FileByteSource postings;
+        final long tableStart;
+
+        private Snapshot(Path dir, String[] paths, long[] sizes, long[] modified, byte[] flags, long buildMillis,
+                         FileByteSource postings) throws IOException {
+            this.dir = dir;
+            this.paths = paths;
+            this.sizes = sizes;
+            this.modified = modified;
+            this.flags = flags;
+            this.buildMillis = buildMillis;
+            this.postings = postings;
+            this.bytes = postings.size() + Files.size(dir.resolve(FILES));
+            this.tableStart = postings.size() - 8L * (BUCKETS + 1);
+        }
+
+        static Snapshot open(Path dir, Path root) throws IOException {
+            String[] paths;
+            long[] sizes;
+            long[] modified;
+            byte[] flags;
+            long buildMillis;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Files.newInputStream(dir.resolve(FILES)), 1 << 16))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(root.toString())) {
+                    throw new IOException("Índice incompatível");
+                }
+                buildMillis = in.readLong();
+                int count = in.readInt();
+                paths = new String[count];
+                sizes = new long[count];
+                modified = new long[count];
+                flags = new byte[count];
+                for (int id = 0; id < count; id++) {
+                    paths[id] = in.readUTF();
+                    sizes[id] = in.readLong();
+                    modified[id] = in.readLong();
+                    flags[id] = in.readByte();
+                }
+            }
+            FileByteSource postings = new FileByteSource(dir.resolve(POSTINGS));
+            ByteBuffer header = ByteBuffer.wrap(postings.read(0, HEADER_BYTES));
+            if (postings.size() < HEADER_BYTES + 8L * (BUCKETS + 1) || header.getInt() != MAGIC
+                    || header.getInt() != VERSION || header.getInt() != BUCKETS) {
+                postings.close();
+                throw new IOException("Índice incompatível");
+            }
+            return new Snapshot(dir, paths, sizes, modified, flags, buildMillis, postings);
+        }
+
+        int[] postings(int bucket) throws IOException {
+            ByteBuffer range = ByteBuffer.wrap(postings.read(tableStart + 8L * bucket, 16));
+            long start = range.getLong();
+            long end = range.getLong();
+            byte[] data = postings.read(start, (int) (end - start));
+            IntList ids = new IntList();
+            int value = 0;
+            int i = 0;
+            while (i < data.length) {
+                int delta = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = data[i++];
+                    delta |= (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                value += delta;
+                ids.add(value - 1);
+            }
+            return ids.copy(0, ids.size());
+        }
+
+        void close() {
+            try {
+                postings.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // Open addressing over non-negative ints.
+    private static final class IntSet {
+        int[] table = new int[256];
+        int size;
+
+        IntSet() {
+            Arrays.fill(table, -1);
+        }
+
+        void add(int value) {
+            int mask = table.length - 1;
+            int slot = (value * 0x9E3779B9) >>> 1 & mask;
+            while (table[slot] != -1) {
+                if (table[slot] == value) {
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = value;
+            if (++size * 2 > table.length) {
+                int[] old = table;
+                table = new int[old.length * 2];
+                Arrays.fill(table, -1);
+                size = 0;
+                for (int v : old) {
+                    if (v != -1) {
+                        add(v);
+                    }
+                }
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            int[] values = new int[size];
+            int n = 0;
+            for (int v : table) {
+                if (v != -1) {
+                    values[n++] = v;
+                }
+            }
+            return values;
+        }
+    }
+}
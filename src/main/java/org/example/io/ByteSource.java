@@ -0,0 +1,25 @@
+package org.example.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public interface ByteSource extends Closeable {
+
+    long size();
+
+    int read(long position, ByteBuffer target) throws IOException;
+
+    default byte[] read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int n = read(position + buffer.position(), buffer);
+            if (n <= 0) {
+                break;
+            }
+        }
+        byte[] bytes = new byte[buffer.position()];
+        buffer.flip().get(bytes);
+        return bytes;
+    }
+}
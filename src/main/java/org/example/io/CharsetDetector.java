@@ -0,0 +1,180 @@
+package org.example.io;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+public final class CharsetDetector {
+
+    public static final int SAMPLE_BYTES = 64 * 1024;
+
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    public enum Kind {
+        UTF8_BOM, UTF16_LE_BOM, UTF16_BE_BOM, UTF16_LE, UTF16_BE, UTF8, ASCII, LEGACY
+    }
+
+    public record Detection(Kind kind, int confidence) {
+    }
+
+    private CharsetDetector() {
+    }
+
+    public static Detection detect(byte[] sample, int length, boolean truncated) {
+        length = Math.min(length, sample.length);
+        if (startsWith(sample, length, 0xEF, 0xBB, 0xBF)) {
+            return new Detection(Kind.UTF8_BOM, 100);
+        }
+        if (startsWith(sample, length, 0xFF, 0xFE)) {
+            return new Detection(Kind.UTF16_LE_BOM, 100);
+        }
+        if (startsWith(sample, length, 0xFE, 0xFF)) {
+            return new Detection(Kind.UTF16_BE_BOM, 100);
+        }
+        Detection utf16 = detectUtf16(sample, length);
+        if (utf16 != null) {
+            return utf16;
+        }
+        return detectUtf8OrLegacy(sample, length, truncated);
+    }
+
+    // ASCII text stored as UTF-16 has a zero in every other byte; real 8-bit text almost never
+    // contains NULs, and binary data has them on both sides.
+    private static Detection detectUtf16(byte[] sample, int length) {
+        int pairs = length / 2;
+        if (pairs < 2) {
+            return null;
+        }
+        int evenZeros = 0;
+        int oddZeros = 0;
+        for (int i = 0; i + 1 < length; i += 2) {
+            if (sample[i] == 0) {
+                evenZeros++;
+            }
+            if (sample[i + 1] == 0) {
+                oddZeros++;
+            }
+        }
+        boolean little = oddZeros * 10 >= pairs * 4 && evenZeros * 20 < pairs;
+        boolean big = evenZeros * 10 >= pairs * 4 && oddZeros * 20 < pairs;
+        if (!little && !big) {
+            return null;
+        }
+        int zeros = little ? oddZeros : evenZeros;
+        int confidence = Math.min(95, 60 + zeros * 40 / pairs);
+        if (!validSurrogates(sample, length, little)) {
+            confidence -= 30;
+        }
+        return new Detection(little ? Kind.UTF16_LE : Kind.UTF16_BE, confidence);
+    }
+
+    private static boolean validSurrogates(byte[] sample, int length, boolean little) {
+        boolean expectLow = false;
+        for (int i = 0; i + 1 < length; i += 2) {
+            int hi = sample[little ? i + 1 : i] & 0xFF;
+            boolean high = hi >= 0xD8 && hi <= 0xDB;
+            boolean low = hi >= 0xDC && hi <= 0xDF;
+            if (expectLow != low) {
+                return false;
+            }
+            expectLow = high;
+        }
+        return true;
+    }
+
+    private static Detection detectUtf8OrLegacy(byte[] sample, int length, boolean truncated) {
+        int multibyte = 0;
+        int invalid = 0;
+        int highBytes = 0;
+        int i = 0;
+        while (i < length) {
+            // Skip runs of ASCII eight bytes at a time; only words with a high bit set need the
+            // byte-by-byte validation below.
+            if (i + 8 <= length && ((long) LONGS.get(sample, i) & HIGH_BITS) == 0) {
+                i += 8;
+                continue;
+            }
+            int b = sample[i] & 0xFF;
+            if (b < 0x80) {
+                i++;
+                continue;
+            }
+            highBytes++;
+            int needed;
+            int min;
+            if (b >= 0xC2 && b <= 0xDF) {
+                needed = 1;
+                min = 0x80;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                needed = 2;
+                min = 0x800;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                needed = 3;
+                min = 0x10000;
+            } else {
+                invalid++;
+                i++;
+                continue;
+            }
+            if (truncated && i + needed >= length) {
+                break;
+            }
+            int code = b & (0x3F >> needed);
+            int j = 1;
+            while (j <= needed && i + j < length && (sample[i + j] & 0xC0) == 0x80) {
+                code = (code << 6) | (sample[i + j] & 0x3F);
+                j++;
+            }
+            if (j <= needed || code < min || code > 0x10FFFF || (code >= 0xD800 && code <= 0xDFFF)) {
+                invalid++;
+                i++;
+                continue;
+            }
+            multibyte++;
+            i += needed + 1;
+        }
+        if (highBytes == 0) {
+            return new Detection(Kind.ASCII, 100);
+        }
+        if (invalid == 0) {
+            return new Detection(Kind.UTF8, Math.min(99, 80 + multibyte * 5));
+        }
+        if (multibyte > invalid * 4) {
+            return new Detection(Kind.UTF8, Math.max(50, 80 - invalid * 100 / multibyte));
+        }
+        return new Detection(Kind.LEGACY, legacyConfidence(sample, length));
+    }
+
+    // Windows-1252 leaves five bytes undefined and real text rarely uses C0 controls other than
+    // tab, CR, LF and form feed; both push the confidence down.
+    private static int legacyConfidence(byte[] sample, int length) {
+        int suspicious = 0;
+        int high = 0;
+        for (int i = 0; i < length; i++) {
+            int b = sample[i] & 0xFF;
+            if (b == 0x81 || b == 0x8D || b == 0x8F || b == 0x90 || b == 0x9D
+                    || (b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f')) {
+                suspicious++;
+            } else if (b >= 0x80) {
+                high++;
+            }
+        }
+        if (high + suspicious == 0) {
+            return 50;
+        }
+        return Math.max(10, 90 - suspicious * 200 / (high + suspicious));
+    }
+
+    private static boolean startsWith(byte[] sample, int length, int... prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if ((sample[i] & 0xFF) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
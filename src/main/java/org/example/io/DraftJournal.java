@@ -0,0 +1,498 @@
+package org.example.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// A tab's draft is a compressed snapshot plus an append-only log of the edits made since. Saving
+// only appends the edits; the log is folded into a new snapshot once it outgrows the snapshot.
+// Every snapshot generation gets its own pair of files, and the previous pair is only deleted once
+// the session table of contents points at the new one.
+public final class DraftJournal {
+
+    public static final String MANIFEST = "session.dat";
+
+    private static final byte[] MANIFEST_MAGIC = "DRAFTS_V3".getBytes(StandardCharsets.US_ASCII);
+    private static final int SNAPSHOT_MAGIC = 0x43504A5A;
+    private static final int SNAPSHOT_HEADER_BYTES = 28;
+    private static final int LOG_MAGIC = 0x43504A4C;
+    private static final int LOG_HEADER_BYTES = 12;
+    private static final long COMPACT_MIN_BYTES = 256 * 1024;
+    private static final byte CHANGE = 'C';
+
+    public record Meta(String title, String filePath, boolean codeMode, String language,
+                       String encoding, String lineEnding) {
+    }
+
+    // One row of the session table of contents: the tab's metadata and where its compressed
+    // snapshot block sits, so tabs can be listed without touching their content.
+    public record Entry(String id, Meta meta, long generation, long offset, int length,
+                       int rawLength, long checksum) {
+
+        Entry withMeta(Meta meta) {
+            return new Entry(id, meta, generation, offset, length, rawLength, checksum);
+        }
+    }
+
+    // What one save hands to the writer thread: either a full snapshot, which supersedes anything
+    // queued before it, or records to append after whatever was queued before.
+    record Batch(Meta meta, String snapshot, byte[] records) {
+
+        Batch then(Batch next) {
+            if (next.snapshot != null) {
+                return next;
+            }
+            byte[] merged = Arrays.copyOf(records, records.length + next.records.length);
+            System.arraycopy(next.records, 0, merged, records.length, next.records.length);
+            return new Batch(next.meta, snapshot, merged);
+        }
+    }
+
+    private final Path dir;
+    private final String id;
+
+    // Owned by the FX thread: edits not yet handed to the writer and the projected file sizes.
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private Meta takenMeta;
+    private long projectedLogBytes;
+    private long projectedSnapshotBytes;
+    private volatile boolean needsSnapshot;
+
+    // Owned by the writer thread.
+    private Entry entry;
+    private long logBytes;
+    private boolean broken;
+    private final List<Long> staleGenerations = new ArrayList<>();
+
+    private DraftJournal(Path dir, String id) {
+        this.dir = dir;
+        this.id = id;
+    }
+
+    public static DraftJournal create(Path dir) {
+        DraftJournal journal = new DraftJournal(dir, UUID.randomUUID().toString());
+        journal.needsSnapshot = true;
+        return journal;
+    }
+
+    // A journal for a table of contents row whose content has not been read yet.
+    public static DraftJournal open(Path dir, Entry entry) {
+        DraftJournal journal = new DraftJournal(dir, entry.id());
+        journal.entry = entry;
+        journal.takenMeta = entry.meta();
+        return journal;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public void record(int position, int removedLength, String inserted) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + inserted.length());
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(CHANGE);
+            out.writeInt(position);
+            out.writeInt(removedLength);
+            writeString(out, inserted);
+            frame(bytes.toByteArray());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    public boolean needsFlush(Meta current) {
+        return needsSnapshot || pending.size() > 0 || !current.equals(takenMeta);
+    }
+
+    // Called on the FX thread; the text is only read when the batch has to be a snapshot.
+    Batch take(Meta current, Supplier<String> text) {
+        if (!needsFlush(current)) {
+            return null;
+        }
+        Batch batch;
+        if (needsSnapshot || projectedLogBytes + pending.size() > Math.max(COMPACT_MIN_BYTES, projectedSnapshotBytes)) {
+            String content = text.get();
+            batch = new Batch(current, content, new byte[0]);
+            needsSnapshot = false;
+            projectedLogBytes = LOG_HEADER_BYTES;
+            projectedSnapshotBytes = content.length();
+        } else {
+            batch = new Batch(current, null, pending.toByteArray());
+            projectedLogBytes += batch.records().length;
+        }
+        takenMeta = current;
+        pending.reset();
+        return batch;
+    }
+
+    // Called on the writer thread; returns whether this journal's table of contents row changed.
+    // A failed write leaves the files short of the edits in memory, so appends are dropped until
+    // the next save, which falls back to a full snapshot.
+    boolean write(Batch batch) throws IOException {
+        boolean changed = false;
+        try {
+            if (batch.snapshot() != null) {
+                compact(batch.meta(), batch.snapshot());
+                broken = false;
+                changed = true;
+            }
+            if (entry == null || broken) {
+                return changed;
+            }
+            if (batch.records().length > 0) {
+                append(batch.records());
+            }
+            if (!batch.meta().equals(entry.meta())) {
+                entry = entry.withMeta(batch.meta());
+                changed = true;
+            }
+            return changed;
+        } catch (IOException ex) {
+            broken = true;
+            needsSnapshot = true;
+            throw ex;
+        }
+    }
+
+    Entry entry() {
+        return entry;
+    }
+
+    // Called on the writer thread once the table of contents names the current generation.
+    void deleteStale() throws IOException {
+        for (long generation : staleGenerations) {
+            Files.deleteIfExists(snapshotFile(generation));
+            Files.deleteIfExists(logFile(generation));
+        }
+        staleGenerations.clear();
+    }
+
+    void delete() throws IOException {
+        deleteStale();
+        if (entry != null) {
+            Files.deleteIfExists(snapshotFile(entry.generation()));
+            Files.deleteIfExists(logFile(entry.generation()));
+        }
+    }
+
+    private void append(byte[] records) throws IOException {
+        try (FileChannel channel = FileChannel.open(logFile(entry.generation()), StandardOpenOption.WRITE)) {
+            channel.truncate(logBytes);
+            ByteBuffer buffer = ByteBuffer.wrap(records);
+            long position = logBytes;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            channel.force(false);
+            logBytes = position;
+        }
+    }
+
+    private void compact(Meta meta, String content) throws IOException {
+        Files.createDirectories(dir);
+        long generation = entry == null ? 1 : entry.generation() + 1;
+        byte[] raw = content.getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = deflate(raw);
+        CRC32 crc = new CRC32();
+        crc.update(compressed);
+        ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER_BYTES)
+                .putInt(SNAPSHOT_MAGIC)
+                .putLong(generation)
+                .putInt(raw.length)
+                .putInt(compressed.length)
+                .putLong(crc.getValue())
+                .flip();
+        writeAtomically(snapshotFile(generation), header, ByteBuffer.wrap(compressed));
+
+        ByteBuffer logHeader = ByteBuffer.allocate(LOG_HEADER_BYTES).putInt(LOG_MAGIC).putLong(generation).flip();
+        try (FileChannel channel = FileChannel.open(logFile(generation), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (logHeader.hasRemaining()) {
+                channel.write(logHeader);
+            }
+            channel.force(false);
+        }
+        if (entry != null) {
+            staleGenerations.add(entry.generation());
+        }
+        entry = new Entry(id, meta, generation, SNAPSHOT_HEADER_BYTES, compressed.length, raw.length, crc.getValue());
+        logBytes = LOG_HEADER_BYTES;
+    }
+
+    // Reads the snapshot block named by the table of contents with positional reads, inflates it
+    // and replays the log on top. Called on the FX thread before any edit is recorded. Nothing is
+    // mapped: on Windows a mapping would keep the file locked until it is garbage collected.
+    public String recover() throws IOException {
+        Entry entry = this.entry;
+        StringBuilder content;
+        try (FileChannel channel = FileChannel.open(snapshotFile(entry.generation()), StandardOpenOption.READ)) {
+            long end = entry.offset() + entry.length();
+            if (entry.offset() < SNAPSHOT_HEADER_BYTES || entry.length() < 0 || channel.size() < end) {
+                throw new IOException("Snapshot truncado: " + entry.id());
+            }
+            ByteBuffer header = readFully(channel, 0, 12);
+            if (header.getInt(0) != SNAPSHOT_MAGIC || header.getLong(4) != entry.generation()) {
+                throw new IOException("Snapshot inválido: " + entry.id());
+            }
+            ByteBuffer block = readFully(channel, entry.offset(), entry.length());
+            CRC32 crc = new CRC32();
+            crc.update(block.duplicate());
+            if (crc.getValue() != entry.checksum()) {
+                throw new IOException("Snapshot corrompido: " + entry.id());
+            }
+            content = new StringBuilder(new String(inflate(block, entry.rawLength()), StandardCharsets.UTF_8));
+        }
+        logBytes = LOG_HEADER_BYTES;
+
+        Path log = logFile(entry.generation());
+        byte[] records = Files.exists(log) ? Files.readAllBytes(log) : new byte[0];
+        ByteBuffer buffer = ByteBuffer.wrap(records);
+        if (records.length >= LOG_HEADER_BYTES && buffer.getInt() == LOG_MAGIC
+                && buffer.getLong() == entry.generation()) {
+            // Replay stops at the first torn or corrupt record; the next append truncates it away.
+            CRC32 crc = new CRC32();
+            while (buffer.remaining() >= 8) {
+                int length = buffer.getInt();
+                long checksum = buffer.getInt() & 0xFFFFFFFFL;
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                crc.reset();
+                crc.update(records, buffer.position(), length);
+                if (crc.getValue() != checksum) {
+                    break;
+                }
+                DataInputStream record = new DataInputStream(
+                        new ByteArrayInputStream(records, buffer.position(), length));
+                if (record.readByte() != CHANGE) {
+                    break;
+                }
+                int position = record.readInt();
+                int removed = record.readInt();
+                String inserted = readString(record);
+                if (position < 0 || removed < 0 || position + removed > content.length()) {
+                    break;
+                }
+                content.replace(position, position + removed, inserted);
+                buffer.position(buffer.position() + length);
+                logBytes = buffer.position();
+            }
+        } else {
+            // The log is missing or unreadable; the next save starts a fresh generation.
+            broken = true;
+            needsSnapshot = true;
+        }
+        projectedSnapshotBytes = entry.rawLength();
+        projectedLogBytes = logBytes;
+        return content.toString();
+    }
+
+    // Reads the DRAFTS_V3 table of contents; returns null when there is none.
+    public static List<Entry> readManifest(Path dir) throws IOException {
+        Path file = dir.resolve(MANIFEST);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            ByteBuffer toc = ByteBuffer.wrap(Files.readAllBytes(file));
+            byte[] magic = new byte[MANIFEST_MAGIC.length];
+            toc.get(magic);
+            if (!Arrays.equals(magic, MANIFEST_MAGIC)) {
+                return null;
+            }
+            int count = toc.getInt();
+            List<Entry> entries = new ArrayList<>(Math.max(0, Math.min(count, 1024)));
+            for (int i = 0; i < count; i++) {
+                String id = readString(toc);
+                Meta meta = new Meta(readString(toc), readString(toc), toc.get() != 0, readString(toc),
+                        readString(toc), readString(toc));
+                entries.add(new Entry(id, meta, toc.getLong(), toc.getLong(), toc.getInt(), toc.getInt(), toc.getLong()));
+            }
+            return entries;
+        } catch (BufferUnderflowException ex) {
+            return null;
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return buffer.flip();
+    }
+
+    static void writeManifest(Path dir, List<Entry> entries) throws IOException {
+        Files.createDirectories(dir);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(MANIFEST_MAGIC);
+        out.writeInt(entries.size());
+        for (Entry entry : entries) {
+            writeString(out, entry.id());
+            Meta meta = entry.meta();
+            writeString(out, meta.title());
+            writeString(out, meta.filePath());
+            out.writeBoolean(meta.codeMode());
+            writeString(out, meta.language());
+            writeString(out, meta.encoding());
+            writeString(out, meta.lineEnding());
+            out.writeLong(entry.generation());
+            out.writeLong(entry.offset());
+            out.writeInt(entry.length());
+            out.writeInt(entry.rawLength());
+            out.writeLong(entry.checksum());
+        }
+        writeAtomically(dir.resolve(MANIFEST), ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    // Removes journal files the table of contents does not point at, e.g. a generation written
+    // just before a crash, or a journal created but never recorded.
+    public static void deleteOrphans(Path dir, List<Entry> entries) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        Set<String> keep = new HashSet<>();
+        for (Entry entry : entries) {
+            keep.add(entry.id() + "." + entry.generation());
+        }
+        try (var files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                int dot = name.lastIndexOf('.');
+                if (dot > 0 && (name.endsWith(".snap") || name.endsWith(".log"))
+                        && !keep.contains(name.substring(0, dot))) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private void frame(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        ByteBuffer header = ByteBuffer.allocate(8).putInt(record.length).putInt((int) crc.getValue());
+        pending.writeBytes(header.array());
+        pending.writeBytes(record);
+    }
+
+    private Path snapshotFile(long generation) {
+        return dir.resolve(id + "." + generation + ".snap");
+    }
+
+    private Path logFile(long generation) {
+        return dir.resolve(id + "." + generation + ".log");
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 3));
+            byte[] chunk = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(ByteBuffer block, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(block);
+            byte[] raw = new byte[rawLength];
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                int n = inflater.inflate(raw, length, rawLength - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != rawLength) {
+                throw new IOException("Snapshot incompleto");
+            }
+            return raw;
+        } catch (DataFormatException ex) {
+            throw new IOException(ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeAtomically(Path target, ByteBuffer... parts) throws IOException {
+        Path temp = Files.createTempFile(target.getParent(), "." + target.getFileName(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                for (ByteBuffer part : parts) {
+                    while (part.hasRemaining()) {
+                        channel.write(part);
+                    }
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new EOFException();
+        }
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,129 @@
+package org.example.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Writes drafts on a single background thread. Saves for a journal that are still queued are
+// merged, so a burst of edits or tab closes costs at most one write per tab.
+public final class DraftWriter {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "draft-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<DraftJournal, DraftJournal.Batch> queued = new LinkedHashMap<>();
+    private final List<DraftJournal> deletes = new ArrayList<>();
+    private Path manifestDir;
+    private List<DraftJournal> manifest;
+    private List<Path> obsolete = new ArrayList<>();
+    private boolean scheduled;
+
+    // Owned by the writer thread: the tabs the table of contents lists, in order.
+    private Path tocDir;
+    private List<DraftJournal> toc = List.of();
+
+    // Runs on the FX thread: only copies what changed, never touches the disk.
+    public void save(DraftJournal journal, DraftJournal.Meta meta, Supplier<String> text) {
+        DraftJournal.Batch batch = journal.take(meta, text);
+        if (batch == null) {
+            return;
+        }
+        synchronized (this) {
+            queued.merge(journal, batch, DraftJournal.Batch::then);
+            schedule();
+        }
+    }
+
+    public synchronized void delete(DraftJournal journal) {
+        queued.remove(journal);
+        deletes.add(journal);
+        schedule();
+    }
+
+    public synchronized void writeManifest(Path dir, List<DraftJournal> journals, Path... obsoleteFiles) {
+        manifestDir = dir;
+        manifest = List.copyOf(journals);
+        obsolete.addAll(List.of(obsoleteFiles));
+        schedule();
+    }
+
+    // Blocks until everything queued so far is on disk; only meant for shutdown.
+    public void awaitIdle(long timeout, TimeUnit unit) {
+        try {
+            executor.submit(() -> {
+            }).get(timeout, unit);
+        } catch (Exception ignored) {
+        }
+    }
+
+    private void schedule() {
+        if (!scheduled) {
+            scheduled = true;
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        Map<DraftJournal, DraftJournal.Batch> batches;
+        List<DraftJournal> deleted;
+        Path dir;
+        List<DraftJournal> journals;
+        List<Path> files;
+        synchronized (this) {
+            batches = new LinkedHashMap<>(queued);
+            deleted = new ArrayList<>(deletes);
+            dir = manifestDir;
+            journals = manifest;
+            files = obsolete;
+            queued.clear();
+            deletes.clear();
+            manifest = null;
+            obsolete = new ArrayList<>();
+            scheduled = false;
+        }
+        // Journals first, so the table of contents never names a snapshot that is not on disk yet;
+        // it is only rewritten when a snapshot, a tab's metadata or the set of tabs changed.
+        boolean tocChanged = journals != null;
+        if (journals != null) {
+            tocDir = dir;
+            toc = journals;
+        }
+        for (Map.Entry<DraftJournal, DraftJournal.Batch> entry : batches.entrySet()) {
+            try {
+                tocChanged |= entry.getKey().write(entry.getValue());
+            } catch (IOException ignored) {
+            }
+        }
+        try {
+            if (tocChanged && tocDir != null) {
+                List<DraftJournal.Entry> entries = new ArrayList<>();
+                for (DraftJournal journal : toc) {
+                    if (journal.entry() != null) {
+                        entries.add(journal.entry());
+                    }
+                }
+                DraftJournal.writeManifest(tocDir, entries);
+                for (DraftJournal journal : toc) {
+                    journal.deleteStale();
+                }
+            }
+            for (DraftJournal journal : deleted) {
+                journal.delete();
+            }
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.example.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public final class FileByteSource implements ByteSource {
+
+    private final FileChannel channel;
+    private final long size;
+
+    public FileByteSource(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        size = channel.size();
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public int read(long position, ByteBuffer target) throws IOException {
+        if (position >= size) {
+            return -1;
+        }
+        return channel.read(target, position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,210 @@
+package org.example.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+public final class LineIndex {
+
+    private static final int STRIDE = 64;
+    private static final int CHUNK = 1 << 20;
+    private static final int SCAN_CHUNK = 1 << 13;
+
+    private final ByteSource source;
+    private final long start;
+    private final int unit;
+    private final boolean bigEndian;
+    private long[] checkpoints = new long[64];
+    private int checkpointCount;
+    private volatile long lineCount = 1;
+    private long lastLineStart;
+    private long longestLine;
+    private volatile long scanned;
+    private volatile boolean complete;
+
+    public LineIndex(ByteSource source, long start, int unit, boolean bigEndian) {
+        this.source = source;
+        this.start = start;
+        this.unit = unit;
+        this.bigEndian = bigEndian;
+        checkpoints[checkpointCount++] = start;
+        scanned = start;
+        lastLineStart = start;
+    }
+
+    public ByteSource source() {
+        return source;
+    }
+
+    public long start() {
+        return start;
+    }
+
+    public long lineCount() {
+        return lineCount;
+    }
+
+    public long scannedBytes() {
+        return scanned;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    // In bytes, line break included; only known once the index is complete.
+    public long longestLine() {
+        return longestLine;
+    }
+
+    public boolean build(BooleanSupplier cancelled) throws IOException {
+        return build(cancelled, scannedBytes -> {
+        });
+    }
+
+    public boolean build(BooleanSupplier cancelled, LongConsumer progress) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK);
+        long pos = start;
+        long size = source.size();
+        long lines = 1;
+        boolean pendingCr = false;
+        while (pos < size) {
+            if (cancelled.getAsBoolean()) {
+                return false;
+            }
+            buffer.clear();
+            buffer.limit((int) Math.min(CHUNK, size - pos) / unit * unit);
+            if (buffer.limit() == 0) {
+                break;
+            }
+            int read = readFully(pos, buffer);
+            int units = read / unit;
+            for (int i = 0; i < units; i++) {
+                char ch = unitAt(buffer, i * unit);
+                long next = pos + (long) (i + 1) * unit;
+                if (pendingCr) {
+                    pendingCr = false;
+                    if (ch == '\n') {
+                        lines = addLine(lines, next);
+                        continue;
+                    }
+                    lines = addLine(lines, next - unit);
+                }
+                if (ch == '\n') {
+                    lines = addLine(lines, next);
+                } else if (ch == '\r') {
+                    pendingCr = true;
+                }
+            }
+            pos += (long) units * unit;
+            scanned = pos;
+            lineCount = lines;
+            progress.accept(pos);
+            if (read < buffer.limit()) {
+                break;
+            }
+        }
+        if (pendingCr) {
+            lines = addLine(lines, pos);
+        }
+        longestLine = Math.max(longestLine, size - lastLineStart);
+        lineCount = lines;
+        scanned = size;
+        complete = true;
+        return true;
+    }
+
+    private long addLine(long lines, long lineStart) {
+        longestLine = Math.max(longestLine, lineStart - lastLineStart);
+        lastLineStart = lineStart;
+        if (lines % STRIDE == 0) {
+            synchronized (this) {
+                if (checkpointCount == checkpoints.length) {
+                    checkpoints = Arrays.copyOf(checkpoints, checkpointCount * 2);
+                }
+                checkpoints[checkpointCount++] = lineStart;
+            }
+        }
+        return lines + 1;
+    }
+
+    public long lineStart(long line) throws IOException {
+        if (line <= 0) {
+            return start;
+        }
+        if (line >= lineCount) {
+            return complete ? source.size() : scanned;
+        }
+        long checkpoint;
+        synchronized (this) {
+            checkpoint = checkpoints[(int) (line / STRIDE)];
+        }
+        return skipLines(checkpoint, line % STRIDE);
+    }
+
+    private long skipLines(long pos, long count) throws IOException {
+        if (count == 0) {
+            return pos;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_CHUNK);
+        long size = source.size();
+        boolean pendingCr = false;
+        while (pos < size) {
+            buffer.clear();
+            buffer.limit((int) Math.min(SCAN_CHUNK, size - pos) / unit * unit);
+            if (buffer.limit() == 0) {
+                break;
+            }
+            int units = readFully(pos, buffer) / unit;
+            if (units == 0) {
+                break;
+            }
+            for (int i = 0; i < units; i++) {
+                char ch = unitAt(buffer, i * unit);
+                long next = pos + (long) (i + 1) * unit;
+                if (pendingCr) {
+                    pendingCr = false;
+                    long lineStart = ch == '\n' ? next : next - unit;
+                    if (--count == 0) {
+                        return lineStart;
+                    }
+                    if (ch == '\n') {
+                        continue;
+                    }
+                }
+                if (ch == '\n') {
+                    if (--count == 0) {
+                        return next;
+                    }
+                } else if (ch == '\r') {
+                    pendingCr = true;
+                }
+            }
+            pos += (long) units * unit;
+        }
+        return pos;
+    }
+
+    private int readFully(long pos, ByteBuffer buffer) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int n = source.read(pos + total, buffer);
+            if (n <= 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    private char unitAt(ByteBuffer buffer, int index) {
+        if (unit == 1) {
+            return (char) (buffer.get(index) & 0xFF);
+        }
+        int first = buffer.get(index) & 0xFF;
+        int second = buffer.get(index + 1) & 0xFF;
+        return (char) (bigEndian ? (first << 8) | second : (second << 8) | first);
+    }
+}
@@ -0,0 +1,73 @@
+package org.example.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+public final class TextFileReader {
+
+    private static final int CHUNK = 64 * 1024;
+
+    private TextFileReader() {
+    }
+
+    public static String read(Path path, Charset charset, long skip,
+                              BooleanSupplier cancelled, LongConsumer progress) throws IOException {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long expected = (long) ((size - skip) * (double) decoder.averageCharsPerByte());
+            StringBuilder text = new StringBuilder((int) Math.min(Integer.MAX_VALUE - 8, Math.max(16, expected)));
+            ByteBuffer in = ByteBuffer.allocateDirect(CHUNK);
+            CharBuffer out = CharBuffer.allocate(CHUNK);
+            long pos = skip;
+            boolean eof = false;
+            while (!eof) {
+                if (cancelled.getAsBoolean()) {
+                    throw new CancellationException();
+                }
+                int n = channel.read(in, pos);
+                if (n < 0) {
+                    eof = true;
+                } else {
+                    pos += n;
+                }
+                in.flip();
+                CoderResult result;
+                do {
+                    result = decoder.decode(in, out, eof);
+                    drain(result, out, text);
+                } while (result.isOverflow());
+                in.compact();
+                progress.accept(pos);
+            }
+            CoderResult result;
+            do {
+                result = decoder.flush(out);
+                drain(result, out, text);
+            } while (result.isOverflow());
+            return text.toString();
+        }
+    }
+
+    private static void drain(CoderResult result, CharBuffer out, StringBuilder text) throws IOException {
+        if (result.isError()) {
+            result.throwException();
+        }
+        out.flip();
+        text.append(out);
+        out.clear();
+    }
+}
@@ -0,0 +1,191 @@
+package org.example.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.AclEntry;
+import java.nio.file.attribute.AclFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.LongFunction;
+
+public final class TextFileWriter {
+
+    private static final int CHUNK = 64 * 1024;
+
+    private final FileChannel channel;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer out = ByteBuffer.allocateDirect(CHUNK);
+
+    private TextFileWriter(FileChannel channel, Charset charset) {
+        this.channel = channel;
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    // Lines go to a temporary file next to the target, which is forced to disk and then moved over
+    // the target, so a crash mid-save leaves either the old file or the new one, never a mix. A
+    // symlink is followed so the link itself survives, and the temporary file takes the target's
+    // permissions and owner first. When those can't be carried over nothing is replaced and
+    // AttributesLostException is thrown, unless `keepAttributes` is false.
+    public static void write(Path target, Iterator<? extends CharSequence> lines, Charset charset,
+                             byte[] bom, String lineSeparator, boolean keepAttributes) throws IOException {
+        write(target, lines, charset, bom, line -> lineSeparator, keepAttributes);
+    }
+
+    public static void write(Path target, Iterator<? extends CharSequence> lines, Charset charset,
+                             byte[] bom, LongFunction<String> separatorAfter, boolean keepAttributes) throws IOException {
+        boolean created = false;
+        boolean saved = false;
+        try {
+            if (Files.notExists(target)) {
+                // Created up front so a new file gets the usual default permissions, not the temp file's.
+                Files.createFile(target);
+                created = true;
+            }
+            Path absolute = target.toRealPath();
+            Path temp = Files.createTempFile(absolute.getParent(), "." + absolute.getFileName(), ".tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    TextFileWriter writer = new TextFileWriter(channel, charset);
+                    if (bom != null) {
+                        writer.out.put(bom);
+                    }
+                    long line = 0;
+                    while (lines.hasNext()) {
+                        if (line > 0) {
+                            writer.encode(CharBuffer.wrap(separatorAfter.apply(line - 1)));
+                        }
+                        writer.encode(CharBuffer.wrap(lines.next()));
+                        line++;
+                    }
+                    writer.finish();
+                    channel.force(true);
+                }
+                if (!copyAttributes(absolute, temp) && keepAttributes) {
+                    throw new AttributesLostException(absolute);
+                }
+                try {
+                    Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException ex) {
+                    Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING);
+                }
+                saved = true;
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } finally {
+            if (created && !saved) {
+                Files.deleteIfExists(target);
+            }
+        }
+    }
+
+    private static boolean copyAttributes(Path from, Path to) {
+        try {
+            PosixFileAttributeView posix = Files.getFileAttributeView(to, PosixFileAttributeView.class);
+            if (posix != null) {
+                PosixFileAttributes attributes = Files.readAttributes(from, PosixFileAttributes.class);
+                if (!attributes.owner().equals(posix.getOwner())) {
+                    posix.setOwner(attributes.owner());
+                }
+                if (!attributes.group().equals(posix.readAttributes().group())) {
+                    posix.setGroup(attributes.group());
+                }
+                posix.setPermissions(attributes.permissions());
+            }
+            AclFileAttributeView acl = Files.getFileAttributeView(to, AclFileAttributeView.class);
+            if (acl != null) {
+                copyAcl(Files.getFileAttributeView(from, AclFileAttributeView.class), acl);
+            }
+            return true;
+        } catch (IOException | RuntimeException ex) {
+            return false;
+        }
+    }
+
+    // The temporary file already inherits from the folder what the target did, so only the target's
+    // other entries are added, ahead of the inherited ones as Windows orders them. The ACL is left
+    // alone when there are none: writing it back would turn inherited entries into explicit ones,
+    // and the file would stop following its folder.
+    private static void copyAcl(AclFileAttributeView from, AclFileAttributeView to) throws IOException {
+        if (!from.getOwner().equals(to.getOwner())) {
+            to.setOwner(from.getOwner());
+        }
+        List<AclEntry> inherited = to.getAcl();
+        List<AclEntry> explicit = new ArrayList<>(from.getAcl());
+        explicit.removeAll(inherited);
+        if (explicit.isEmpty()) {
+            return;
+        }
+        explicit.addAll(inherited);
+        to.setAcl(explicit);
+    }
+
+    private void encode(CharBuffer chars) throws IOException {
+        while (true) {
+            CoderResult result = encoder.encode(chars, out, false);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (result.isOverflow()) {
+                drain();
+            } else if (chars.hasRemaining()) {
+                // A lone high surrogate at the end of a line never gets its pair.
+                if (out.remaining() < encoder.replacement().length) {
+                    drain();
+                }
+                out.put(encoder.replacement());
+                chars.position(chars.limit());
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void finish() throws IOException {
+        CoderResult result;
+        do {
+            result = encoder.encode(CharBuffer.allocate(0), out, true);
+            if (result.isOverflow()) {
+                drain();
+            }
+        } while (result.isOverflow());
+        do {
+            result = encoder.flush(out);
+            drain();
+        } while (result.isOverflow());
+    }
+
+    private void drain() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    // The target's permissions or owner could not be given to the new file; nothing was written.
+    public static final class AttributesLostException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public AttributesLostException(Path file) {
+            super("Não foi possível manter as permissões e o dono de " + file);
+        }
+    }
+}